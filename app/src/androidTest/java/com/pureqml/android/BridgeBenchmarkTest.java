@@ -0,0 +1,88 @@
+package com.pureqml.android;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.eclipsesource.v8.V8;
+import com.eclipsesource.v8.V8Array;
+import com.eclipsesource.v8.V8Function;
+import com.eclipsesource.v8.V8Object;
+import com.pureqml.android.runtime.Element;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+//per-call cost of reflective and generated dispatch of no-argument and one-argument methods, numbers go to logcat
+@RunWith(AndroidJUnit4.class)
+public class BridgeBenchmarkTest {
+    private static final String TAG = "BridgeBenchmarkTest";
+    static final int Iterations = 100000;
+    static final String[] Names = { "reflectiveGet", "generatedGet", "reflectiveSet", "generatedSet" };
+
+    @Rule
+    public final EnvironmentRule environment = new EnvironmentRule();
+
+    @Test
+    public void reportsPerCallCost() throws Exception {
+        final ExecutionEnvironment env = environment.getEnvironment();
+        double[] result = environment.run(new Callable<double[]>() {
+            @Override
+            public double[] call() throws Exception {
+                IDispatcher dispatcher = Wrapper.findDispatcher(Element.class);
+                assertNotNull("no generated dispatcher for " + Element.class.getName(), dispatcher);
+
+                V8 v8 = env.getRuntime();
+                Element element = new Element(env);
+                env.putObject(element.getObjectId(), element);
+                V8Object target = new V8Object(v8);
+                target.add(Wrapper.UNIQUE_ID_KEY, element.getObjectId());
+                target.registerJavaMethod(new Wrapper.MethodWrapper(env, Element.class.getMethod("getScrollX")), "reflectiveGet");
+                target.registerJavaMethod(new Wrapper.MethodWrapper(env, Element.class.getMethod("enableCache", boolean.class)), "reflectiveSet");
+                target.registerJavaMethod(new Wrapper.DispatchWrapper(env, dispatcher, Wrapper.findMethod(dispatcher, "getScrollX"), "Element.getScrollX"), "generatedGet");
+                target.registerJavaMethod(new Wrapper.DispatchWrapper(env, dispatcher, Wrapper.findMethod(dispatcher, "enableCache"), "Element.enableCache"), "generatedSet");
+
+                //getters take no arguments, setters take one boolean
+                V8Function getLoop = (V8Function)v8.executeObjectScript(
+                    "(function(o, name, n) { var f = o[name]; for(var i = 0; i < n; ++i) f.call(o); })");
+                V8Function setLoop = (V8Function)v8.executeObjectScript(
+                    "(function(o, name, n) { var f = o[name]; for(var i = 0; i < n; ++i) f.call(o, false); })");
+                double[] ns = new double[Names.length];
+                try {
+                    for(int i = 0; i < Names.length; ++i) {
+                        String name = Names[i];
+                        V8Function loop = name.endsWith("Get")? getLoop: setLoop;
+                        V8Array args = new V8Array(v8).push(target).push(name).push(Iterations / 10);
+                        loop.call(null, args); //warm up
+                        args.close();
+
+                        args = new V8Array(v8).push(target).push(name).push(Iterations);
+                        long started = System.nanoTime();
+                        loop.call(null, args);
+                        ns[i] = (double)(System.nanoTime() - started) / Iterations;
+                        args.close();
+                    }
+                } finally {
+                    getLoop.close();
+                    setLoop.close();
+                    target.close();
+                    element.discard();
+                }
+                return ns;
+            }
+        });
+
+        StringBuilder b = new StringBuilder();
+        for(int i = 0; i < Names.length; ++i) {
+            assertTrue(Names[i] + " reported " + result[i] + "ns", result[i] > 0);
+            b.append(' ').append(Names[i]).append('=').append(result[i]);
+        }
+        Log.i(TAG, "ns per call:" + b);
+    }
+}
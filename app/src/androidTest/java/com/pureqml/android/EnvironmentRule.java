@@ -0,0 +1,72 @@
+package com.pureqml.android;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.rules.ExternalResource;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+//binds execution environment service for the duration of a test, runs test code on js thread
+//runtime is created by the first task of js executor, so anything submitted later sees registered fd.* api
+public final class EnvironmentRule extends ExternalResource {
+    static final long ConnectTimeout = 10;  //seconds
+
+    private final CountDownLatch    _connected = new CountDownLatch(1);
+    private ExecutionEnvironment    _env;
+    private Context                 _context;
+
+    private final ServiceConnection _connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName className, IBinder service) {
+            _env = ((ExecutionEnvironment.LocalBinder)service).getService();
+            _connected.countDown();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName className) {
+            _env = null;
+        }
+    };
+
+    @Override
+    protected void before() throws Throwable {
+        _context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        if (!_context.bindService(new Intent(_context, ExecutionEnvironment.class), _connection, Context.BIND_AUTO_CREATE))
+            throw new IllegalStateException("can't bind execution environment");
+        if (!_connected.await(ConnectTimeout, TimeUnit.SECONDS))
+            throw new IllegalStateException("execution environment did not connect in " + ConnectTimeout + "s");
+    }
+
+    @Override
+    protected void after() {
+        if (_context != null)
+            _context.unbindService(_connection); //last binding, service is destroyed along with runtime
+        _env = null;
+        _context = null;
+    }
+
+    public ExecutionEnvironment getEnvironment() {
+        return _env;
+    }
+
+    //runs task on js thread and waits for the result, rethrows task exception
+    public <T> T run(Callable<T> task) throws Exception {
+        try {
+            return _env.getExecutor().submit(task).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception)cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.pureqml.android;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+
+//creates and discards timers, requests and listeners, then live handle count must be back at baseline
+//baseline and check are both taken inside fd.* calls, so call receiver and arguments are accounted the same way
+@RunWith(AndroidJUnit4.class)
+public class HandleLeakTest {
+    static final int    Rounds          = 50;
+    static final long   SettleTimeout   = 10000; //ms
+    static final String RefusedUrl      = "http://127.0.0.1:1/";
+
+    static final String Setup =
+        "var leakTest = { baseline: fd.getHandleStats().live, pending: 0 }";
+
+    static final String Churn =
+        "(function(n, url) {\n" +
+        "   var done = function() { --leakTest.pending }\n" +
+        "   for(var i = 0; i < n; ++i) {\n" +
+        "       clearTimeout(setTimeout(function() { }, 100000))\n" +
+        "       clearInterval(setInterval(function() { }, 100000))\n" +
+        "       ++leakTest.pending; setTimeout(done, 0)\n" +
+        "       ++leakTest.pending; fd.httpRequest({ url: url, done: done, error: done })\n" +
+        "       var element = new fd.Element()\n" +
+        "       element.on('click', function() { })\n" +
+        "       element.on('keydown', function() { })\n" +
+        "       element.discard()\n" +
+        "   }\n" +
+        "})";
+
+    @Rule
+    public final EnvironmentRule environment = new EnvironmentRule();
+
+    private int pending() throws Exception {
+        final ExecutionEnvironment env = environment.getEnvironment();
+        return environment.run(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return env.getRuntime().executeIntegerScript("leakTest.pending");
+            }
+        });
+    }
+
+    @Test
+    public void discardedHandlesAreReleased() throws Exception {
+        final ExecutionEnvironment env = environment.getEnvironment();
+        environment.run(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                env.getRuntime().executeVoidScript("fd.setDeviceFeature('track-handles', 'sites')");
+                env.getRuntime().executeVoidScript(Setup);
+                env.getRuntime().executeVoidScript(Churn + "(" + Rounds + ", '" + RefusedUrl + "')");
+                return null;
+            }
+        });
+
+        //fired timers and failed requests release their callbacks on js thread
+        long deadline = System.currentTimeMillis() + SettleTimeout;
+        int pending;
+        while ((pending = pending()) > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(50);
+        assertEquals("timers and requests did not complete in " + SettleTimeout + "ms", 0, pending);
+
+        environment.run(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    //throws with live handle sites if anything is over baseline
+                    env.getRuntime().executeVoidScript("fd.checkHandles(leakTest.baseline)");
+                } finally {
+                    env.getRuntime().executeVoidScript("fd.setDeviceFeature('track-handles', false)");
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package com.pureqml.android;
+
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.os.Build;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.eclipsesource.v8.V8Array;
+import com.eclipsesource.v8.V8Function;
+import com.eclipsesource.v8.V8Object;
+import com.pureqml.android.runtime.Element;
+import com.pureqml.android.runtime.LayerManager;
+import com.pureqml.android.runtime.PaintState;
+import com.pureqml.android.runtime.RenderStats;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+//paints unchanged scene frame after frame the way paint(holder) does, replayed frames must not allocate
+@RunWith(AndroidJUnit4.class)
+public class StaticFrameAllocationTest {
+    static final int Width          = 400;
+    static final int Height         = 400;
+    static final int Children       = 100;
+    static final int WarmupFrames   = 10;   //layer promotion and rejection settle within first frames
+    static final int Frames         = 30;
+
+    static final String Scene =
+        "(function(w, h, n) {\n" +
+        "   var root = new fd.Element(); root.setGeometry(0, 0, w, h)\n" +
+        "   var objects = [root]\n" +
+        "   for(var i = 0; i < n; ++i) {\n" +
+        "       var r = new fd.Rectangle()\n" +
+        "       r.setGeometry((i % 10) * 40, Math.floor(i / 10) * 40, 32, 32)\n" +
+        "       r.style('background-color', '#ff0000')\n" +
+        "       root.append(r)\n" +
+        "       objects.push(r)\n" +
+        "   }\n" +
+        "   return objects\n" +
+        "})";
+
+    @Rule
+    public final EnvironmentRule environment = new EnvironmentRule();
+
+    @Test
+    public void staticFramesDoNotAllocate() throws Exception {
+        assumeTrue("element display lists need api 23", Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
+        final ExecutionEnvironment env = environment.getEnvironment();
+        environment.run(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                V8Function scene = (V8Function)env.getRuntime().executeObjectScript(Scene);
+                V8Array args = new V8Array(env.getRuntime()).push(Width).push(Height).push(Children);
+                V8Array objects = (V8Array)scene.call(null, args);
+                args.close();
+                scene.close();
+
+                AllocationTracker tracker = new AllocationTracker();
+                tracker.setEnabled(true);
+                try {
+                    V8Object rootObject = objects.getObject(0);
+                    Element root = (Element)env.getObjectById(Wrapper.getObjectId(rootObject));
+                    rootObject.close();
+
+                    RenderStats stats = env.getRenderStats();
+                    LayerManager layers = env.getLayerManager();
+                    PaintState state = new PaintState((Canvas)null);
+                    Picture picture = new Picture();
+                    ArrayList<LayerManager.Raster> rasters = new ArrayList<LayerManager.Raster>();
+
+                    for(int frame = 0; frame < Frames; ++frame) {
+                        stats.beginFrame();
+                        Canvas canvas = picture.beginRecording(Width, Height);
+                        tracker.begin();
+                        root.paint(state.reset(canvas));
+                        tracker.end(stats.recorded == 0);
+                        picture.endRecording();
+                        stats.endFrame();
+
+                        //render thread part of the frame
+                        layers.takeRasters(rasters);
+                        for(int i = 0, n = rasters.size(); i < n; ++i)
+                            rasters.get(i).draw();
+                        rasters.clear();
+                        layers.onFrame();
+
+                        if (frame == 0)
+                            assertTrue("allocation counting does not work, first frame allocated nothing", tracker.getLastCount() > 0);
+                        if (frame < WarmupFrames)
+                            continue;
+                        assertEquals("frame " + frame + " re-recorded display lists", 0, stats.recorded);
+                        assertTrue("frame " + frame + " replayed nothing", stats.replayed > 0);
+                        assertEquals("frame " + frame + " allocated " + tracker.getLastSize() + " bytes", 0, tracker.getLastCount());
+                    }
+                } finally {
+                    tracker.setEnabled(false);
+                    for(int i = 0, n = objects.length(); i < n; ++i) {
+                        V8Object object = objects.getObject(i);
+                        object.executeVoidFunction("discard", null);
+                        object.close();
+                    }
+                    objects.close();
+                }
+                return null;
+            }
+        });
+    }
+}
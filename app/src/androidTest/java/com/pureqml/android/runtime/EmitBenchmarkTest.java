@@ -0,0 +1,91 @@
+package com.pureqml.android.runtime;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.eclipsesource.v8.V8;
+import com.eclipsesource.v8.V8Function;
+import com.pureqml.android.EnvironmentRule;
+import com.pureqml.android.ExecutionEnvironment;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertTrue;
+
+//per-emit cost of native events with one js listener, in nanoseconds, numbers go to logcat
+//event rates to sustain: keydown, scroll, timeupdate and input, 10k emits per second at most
+@RunWith(AndroidJUnit4.class)
+public class EmitBenchmarkTest {
+    private static final String TAG = "EmitBenchmarkTest";
+    static final int Iterations = 100000;
+    static final int TargetRate = 10000;
+
+    @Rule
+    public final EnvironmentRule environment = new EnvironmentRule();
+
+    private static double perEmit(long started, int iterations) {
+        return (double)(System.nanoTime() - started) / iterations;
+    }
+
+    @Test
+    public void sustainsTargetRate() throws Exception {
+        final ExecutionEnvironment env = environment.getEnvironment();
+        double[] result = environment.run(new Callable<double[]>() {
+            @Override
+            public double[] call() throws Exception {
+                V8 v8 = env.getRuntime();
+                Element element = new Element(env);
+                env.putObject(element.getObjectId(), element);
+                V8Function listener = (V8Function)v8.executeObjectScript("(function() { return false })");
+                element.on("scroll", listener.twin());
+                element.on("keydown", listener.twin());
+                element.on("resize", listener.twin());
+                listener.close();
+
+                double[] ns = new double[4];
+                try {
+                    for(int i = 0; i < Iterations / 10; ++i) //warm up
+                        element.emit(null, "scroll");
+
+                    long started = System.nanoTime();
+                    for(int i = 0; i < Iterations; ++i)
+                        element.emit(null, "scroll");
+                    ns[0] = perEmit(started, Iterations);
+
+                    started = System.nanoTime();
+                    for(int i = 0; i < Iterations; ++i)
+                        element.emitUntilTrue(null, "keydown", "Enter");
+                    ns[1] = perEmit(started, Iterations);
+
+                    started = System.nanoTime();
+                    for(int i = 0; i < Iterations; ++i)
+                        element.emit(null, "resize", i, i);
+                    ns[2] = perEmit(started, Iterations);
+
+                    started = System.nanoTime();
+                    for(int i = 0; i < Iterations; ++i)
+                        element.emit(null, "mousemove"); //no listeners
+                    ns[3] = perEmit(started, Iterations);
+                } finally {
+                    element.discard();
+                }
+                return ns;
+            }
+        });
+
+        String[] names = { "emit", "emitString", "emitVarargs", "emitUnhandled" };
+        StringBuilder b = new StringBuilder();
+        for(int i = 0; i < names.length; ++i) {
+            assertTrue(names[i] + " reported " + result[i] + "ns", result[i] > 0);
+            b.append(' ').append(names[i]).append('=').append(result[i]);
+        }
+        double perSecond = 1e9 / result[0];
+        Log.i(TAG, "ns per emit:" + b + ", emits per second: " + perSecond + ", target load: " + TargetRate / perSecond);
+        assertTrue("emit sustains only " + perSecond + " per second", perSecond > TargetRate);
+    }
+}
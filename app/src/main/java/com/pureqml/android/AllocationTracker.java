@@ -0,0 +1,68 @@
+package com.pureqml.android;
+
+import android.os.Debug;
+import android.util.Log;
+
+//debug mode: counts objects allocated by js thread during paint traversal
+//a frame which replayed every display list (static scene) must not allocate anything
+final class AllocationTracker {
+    static final String TAG = "AllocationTracker";
+
+    private boolean     _enabled;
+    private int         _lastCount;
+    private int         _lastSize;
+    private long        _violations;
+
+    AllocationTracker() {
+        if (Log.isLoggable(TAG, Log.DEBUG))
+            setEnabled(true);
+    }
+
+    @SuppressWarnings("deprecation")
+    void setEnabled(boolean enabled) {
+        if (_enabled == enabled)
+            return;
+        _enabled = enabled;
+        Log.i(TAG, "allocation tracking " + (enabled? "enabled": "disabled"));
+        if (enabled)
+            Debug.startAllocCounting();
+        else
+            Debug.stopAllocCounting();
+    }
+
+    boolean isEnabled() {
+        return _enabled;
+    }
+
+    @SuppressWarnings("deprecation")
+    void begin() {
+        if (!_enabled)
+            return;
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+    }
+
+    @SuppressWarnings("deprecation")
+    void end(boolean staticFrame) {
+        if (!_enabled)
+            return;
+        _lastCount = Debug.getThreadAllocCount();
+        _lastSize = Debug.getThreadAllocSize();
+        if (staticFrame && _lastCount > 0) {
+            ++_violations;
+            Log.wtf(TAG, "static frame allocated " + _lastCount + " objects, " + _lastSize + " bytes");
+        }
+    }
+
+    int getLastCount() {
+        return _lastCount;
+    }
+
+    int getLastSize() {
+        return _lastSize;
+    }
+
+    long getViolations() {
+        return _violations;
+    }
+}
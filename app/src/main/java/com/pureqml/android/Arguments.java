@@ -0,0 +1,71 @@
+package com.pureqml.android;
+
+import com.eclipsesource.v8.V8Array;
+import com.eclipsesource.v8.V8Value;
+
+//typed argument extraction for generated dispatchers, avoids boxing for numbers and booleans
+public final class Arguments {
+    private Arguments() {}
+
+    public static int getInteger(V8Array args, int index) {
+        switch(args.getType(index)) {
+            case V8Value.INTEGER:
+                return args.getInteger(index);
+            case V8Value.DOUBLE:
+                return (int)args.getDouble(index);
+            default:
+                return TypeConverter.toInteger(args.get(index));
+        }
+    }
+
+    public static long getLong(V8Array args, int index) {
+        switch(args.getType(index)) {
+            case V8Value.INTEGER:
+                return args.getInteger(index);
+            case V8Value.DOUBLE:
+                return (long)args.getDouble(index);
+            default:
+                return TypeConverter.toInteger(args.get(index));
+        }
+    }
+
+    public static float getFloat(V8Array args, int index) {
+        switch(args.getType(index)) {
+            case V8Value.INTEGER:
+                return args.getInteger(index);
+            case V8Value.DOUBLE:
+                return (float)args.getDouble(index);
+            default:
+                return TypeConverter.toFloat(args.get(index));
+        }
+    }
+
+    public static double getDouble(V8Array args, int index) {
+        switch(args.getType(index)) {
+            case V8Value.INTEGER:
+            case V8Value.DOUBLE:
+                return args.getDouble(index);
+            default:
+                return TypeConverter.toFloat(args.get(index));
+        }
+    }
+
+    public static boolean getBoolean(V8Array args, int index) {
+        if (args.getType(index) == V8Value.BOOLEAN)
+            return args.getBoolean(index);
+        else
+            return TypeConverter.toBoolean(args.get(index));
+    }
+
+    public static String getString(IExecutionEnvironment env, V8Array args, int index) {
+        if (args.getType(index) == V8Value.STRING)
+            return args.getString(index);
+        else
+            return (String)getObject(env, args, index, String.class);
+    }
+
+    //same conversion as reflective wrapper: native peers are resolved by id, undefined and null become null
+    public static Object getObject(IExecutionEnvironment env, V8Array args, int index, Class<?> type) {
+        return TypeConverter.getValue(env, type, args.get(index));
+    }
+}
@@ -0,0 +1,144 @@
+package com.pureqml.android;
+
+import android.graphics.Rect;
+
+//small set of screen rectangles to repaint
+//rectangles are merged only if painting the union is cheaper than painting them separately
+final class DirtyRegion {
+    static final int            MaxRects        = 8;
+    //fixed cost of one extra paint pass (tree traversal, clip setup), in pixels
+    static final int            RegionOverhead  = 64 * 64;
+
+    private final Rect[]        _rects  = new Rect[MaxRects + 1];
+    private int                 _size;
+    private final Rect          _bounds = new Rect();
+    private final Rect          _union  = new Rect();
+
+    DirtyRegion() {
+        for(int i = 0; i < _rects.length; ++i)
+            _rects[i] = new Rect();
+    }
+
+    private static long area(Rect rect) {
+        return (long)rect.width() * rect.height();
+    }
+
+    private static long area(int l, int t, int r, int b) {
+        return (long)(r - l) * (b - t);
+    }
+
+    private void removeAt(int index) {
+        Rect removed = _rects[index];
+        --_size;
+        _rects[index] = _rects[_size];
+        _rects[_size] = removed;
+    }
+
+    void add(Rect rect) {
+        if (rect == null || rect.isEmpty())
+            return;
+
+        _rects[_size++].set(rect);
+        //merge new rect until nothing can be merged profitably
+        int index = _size - 1;
+        boolean merged;
+        do {
+            merged = false;
+            Rect current = _rects[index];
+            for(int i = 0; i < _size; ++i) {
+                if (i == index)
+                    continue;
+                Rect other = _rects[i];
+                if (other.contains(current)) {
+                    removeAt(index);
+                    return;
+                }
+                _union.set(other);
+                _union.union(current);
+                if (area(_union) <= area(other) + area(current) + RegionOverhead) {
+                    other.set(_union);
+                    removeAt(index);
+                    index = i == _size? index: i; //last rect could be moved to removed slot
+                    merged = true;
+                    break;
+                }
+            }
+        } while(merged && _size > 1);
+
+        if (_size > MaxRects)
+            mergeCheapestPair();
+    }
+
+    //merges pair with the smallest area growth
+    private void mergeCheapestPair() {
+        int bestA = -1, bestB = -1;
+        long bestCost = Long.MAX_VALUE;
+        for(int a = 0; a < _size; ++a) {
+            Rect ra = _rects[a];
+            for(int b = a + 1; b < _size; ++b) {
+                Rect rb = _rects[b];
+                long cost = area(Math.min(ra.left, rb.left), Math.min(ra.top, rb.top), Math.max(ra.right, rb.right), Math.max(ra.bottom, rb.bottom))
+                        - area(ra) - area(rb);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestA = a;
+                    bestB = b;
+                }
+            }
+        }
+        _rects[bestA].union(_rects[bestB]);
+        removeAt(bestB);
+    }
+
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    int size() {
+        return _size;
+    }
+
+    Rect get(int index) {
+        return _rects[index];
+    }
+
+    Rect getBounds() {
+        _bounds.setEmpty();
+        for(int i = 0; i < _size; ++i)
+            _bounds.union(_rects[i]);
+        return _bounds;
+    }
+
+    long getArea() {
+        long area = 0;
+        for(int i = 0; i < _size; ++i)
+            area += area(_rects[i]);
+        return area;
+    }
+
+    void set(Rect rect) {
+        clear();
+        add(rect);
+    }
+
+    void set(DirtyRegion region) {
+        _size = region._size;
+        for(int i = 0; i < _size; ++i)
+            _rects[i].set(region._rects[i]);
+    }
+
+    void clear() {
+        _size = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DirtyRegion[");
+        for(int i = 0; i < _size; ++i) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(_rects[i].toShortString());
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -10,11 +10,10 @@ import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.SystemClock;
@@ -25,6 +24,7 @@ import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 
 import androidx.annotation.Nullable;
 
@@ -35,33 +35,41 @@ import com.eclipsesource.v8.V8;
 import com.eclipsesource.v8.V8Array;
 import com.eclipsesource.v8.V8Function;
 import com.eclipsesource.v8.V8Object;
+import com.pureqml.android.runtime.ArgumentPool;
 import com.pureqml.android.runtime.BaseObject;
+import com.pureqml.android.runtime.CommandBuffer;
 import com.pureqml.android.runtime.Console;
 import com.pureqml.android.runtime.Element;
 import com.pureqml.android.runtime.HttpRequest;
 import com.pureqml.android.runtime.Image;
 import com.pureqml.android.runtime.Input;
 import com.pureqml.android.runtime.LocalStorage;
+import com.pureqml.android.runtime.LogSink;
 import com.pureqml.android.runtime.PaintState;
 import com.pureqml.android.runtime.Rectangle;
+import com.pureqml.android.runtime.LayerManager;
+import com.pureqml.android.runtime.RenderStats;
 import com.pureqml.android.runtime.Spinner;
+import com.pureqml.android.runtime.StyleRegistry;
 import com.pureqml.android.runtime.Text;
 import com.pureqml.android.runtime.Timers;
 import com.pureqml.android.runtime.VideoPlayer;
+import com.pureqml.android.runtime.Worker;
+import com.pureqml.android.runtime.WorkerPool;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
-import java.util.Vector;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -70,8 +78,9 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 public final class ExecutionEnvironment extends Service
-        implements IExecutionEnvironment, IResource {
+        implements IExecutionEnvironment, IResource, FrameScheduler.Client, RenderThread.Listener {
     public static final String TAG = "ExecutionEnvironment";
+    static final long WarmTimeout = 30 * 60 * 1000; //unbound warm runtime is released after that
 
     public class LocalBinder extends Binder {
         ExecutionEnvironment getService() {
@@ -87,11 +96,11 @@ public final class ExecutionEnvironment extends Service
         ElementUpdater(Element el, float seconds) {
             element = el;
             duration = (long)(1000 * seconds);
-            started = SystemClock.currentThreadTimeMillis();
+            started = SystemClock.uptimeMillis();
         }
 
-        public boolean tick() {
-            long dt = SystemClock.currentThreadTimeMillis() - started;
+        public boolean tick(long now) {
+            long dt = now - started;
             Log.v(TAG, "tick " + dt + " of " + duration);
             boolean running = dt < duration;
             if (running)
@@ -106,12 +115,23 @@ public final class ExecutionEnvironment extends Service
     static class WeakRefList<E> extends ArrayList<WeakReference<E>> {}
 
     //Element collection
-    private final HashMap<Integer, BaseObject>_objects = new HashMap<>(10000);
-    private int                         _nextObjectId = 1;
+    private final ObjectTable                 _objects = new ObjectTable();
     private final WeakRefList<IResource>      _resources = new WeakRefList<>();
     private final Set<Element>                _updatedElements = new HashSet<>();
+    private final DirtyRegion                 _dirtyRegion = new DirtyRegion();
+    private final RenderStats                 _renderStats = new RenderStats();
+    private final LayerManager                _layerManager = new LayerManager();
+    private final CommandBuffer               _commandBuffer = new CommandBuffer(this);
+    private final AllocationTracker           _allocationTracker = new AllocationTracker();
+    private final HandleTracker               _handleTracker = new HandleTracker();
+    private final ArgumentPool                _argumentPool = new ArgumentPool();
+    private final WorkerPool                  _workerPool = new WorkerPool();
+    private final LogSink                     _logSink = new LogSink();
+    private final StartupTimeline             _startupTimeline = new StartupTimeline();
+    private final PaintState                  _rootPaintState = new PaintState((Canvas)null);
     private final Map<Element, ElementUpdater>_elementUpdaters = new HashMap<>();
     private final Set<Element>                _elementUpdatersStop = new HashSet<>();
+    private final List<Wrapper.LazyClass>     _classes = new ArrayList<>();
     private Rect                        _surfaceGeometry;
     private V8Object                    _rootObject;
     private Element                     _rootElement;
@@ -121,8 +141,14 @@ public final class ExecutionEnvironment extends Service
     private final ExecutorService       _threadPool;
     private final ImageLoader           _imageLoader;
     private IRenderer                   _renderer;
-    private ViewGroup                   _rootView;
-    private boolean                     _paintScheduled;
+    private volatile ViewGroup          _rootView;
+    private final List<View>            _detachedViews = new ArrayList<>(); //element views kept between activities, ui thread only
+    private volatile boolean            _warm;
+    private boolean                     _bound; //ui thread only
+    private final Handler               _uiHandler = new Handler(Looper.getMainLooper());
+    private FrameScheduler              _frameScheduler;
+    private RenderThread                _renderThread;
+    private long                        _frameTime;
     private int                         _eventId;
     private boolean                     _blockInput;
     private View                        _focusedView;
@@ -134,6 +160,7 @@ public final class ExecutionEnvironment extends Service
 
     public ExecutionEnvironment() {
         super();
+        _startupTimeline.mark(StartupTimeline.Created);
 
         Log.i(TAG, "starting execution environment thread...");
         _executor = Executors.newSingleThreadExecutor();
@@ -158,8 +185,101 @@ public final class ExecutionEnvironment extends Service
         return _rootView;
     }
 
+    //ui thread, moves views of native elements (inputs, players) to the root view of the new activity
     void setRootView(ViewGroup rootView) {
+        ViewGroup old = _rootView;
+        if (old == rootView)
+            return;
+        if (old != null) {
+            for(int i = old.getChildCount() - 1; i >= 0; --i) {
+                View child = old.getChildAt(i);
+                if (child.getId() == View.NO_ID) { //views from activity layout have ids
+                    old.removeViewAt(i);
+                    _detachedViews.add(0, child);
+                }
+            }
+        }
         _rootView = rootView;
+        if (rootView != null) {
+            if (!_detachedViews.isEmpty())
+                Log.i(TAG, "reattaching " + _detachedViews.size() + " views");
+            for(View view : _detachedViews) {
+                ViewGroup.LayoutParams lp = view.getLayoutParams();
+                if (lp != null)
+                    rootView.addView(view, lp);
+                else
+                    rootView.addView(view);
+            }
+            _detachedViews.clear();
+        }
+    }
+
+    //ui thread, finishing activity is destroyed only after the next one is idle, and the next one may be bound already,
+    //so only the references which still belong to the caller are dropped
+    void detachActivity(ViewGroup rootView, SurfaceHolder holder, IRenderer renderer) {
+        if (rootView != null && _rootView == rootView)
+            setRootView(null);
+        if (holder != null && _surfaceHolder == holder)
+            setSurfaceHolder(null);
+        if (renderer != null)
+            releaseRenderer(renderer);
+    }
+
+    //warm runtime outlives activity: service is started, so unbinding does not destroy it
+    void setWarm(boolean warm) {
+        if (_warm == warm)
+            return;
+        _warm = warm;
+        Log.i(TAG, "warm mode " + (warm? "enabled": "disabled"));
+        if (warm)
+            startService(new Intent(this, ExecutionEnvironment.class));
+        else
+            stopSelf(); //destroyed when last activity unbinds
+    }
+
+    private final Runnable _releaseWarmTask = new Runnable() {
+        @Override
+        public void run() {
+            releaseWarm("idle for " + WarmTimeout / 1000 + "s");
+        }
+    };
+
+    //ui thread
+    private void releaseWarm(String reason) {
+        _uiHandler.removeCallbacks(_releaseWarmTask);
+        if (!_warm)
+            return;
+        Log.i(TAG, "releasing warm runtime: " + reason);
+        setWarm(false);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_NOT_STICKY; //warm runtime is not worth restarting after being killed
+    }
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        _bound = false;
+        if (_warm) {
+            Log.i(TAG, "activity unbound, keeping warm runtime");
+            _uiHandler.postDelayed(_releaseWarmTask, WarmTimeout);
+        }
+        return true; //onRebind
+    }
+
+    @Override
+    public void onRebind(Intent intent) {
+        _bound = true;
+        _uiHandler.removeCallbacks(_releaseWarmTask);
+        Log.i(TAG, "activity rebound to " + (_warm? "warm": "running") + " runtime");
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        if (!_bound)
+            releaseWarm("low memory");
     }
 
     public Element getRootElement() {
@@ -175,18 +295,31 @@ public final class ExecutionEnvironment extends Service
     public void setRenderer(IRenderer renderer) {
         Log.v(TAG, "setRenderer " + renderer);
         String orientation;
-        boolean keepScreenOn;
+        boolean keepScreenOn, fullScreen;
         synchronized (this) {
             _renderer = renderer;
             orientation = _orientation;
             keepScreenOn = _keepScreenOn;
+            fullScreen = _fullScreen;
         }
         if (renderer != null) {
             renderer.invalidateRect(null); //fullscreen update
             if (orientation != null)
                 renderer.lockOrientation(orientation);
             renderer.keepScreenOn(keepScreenOn);
+            if (fullScreen)
+                renderer.setFullScreen(true); //new activity of warm runtime
+        }
+    }
+
+    //clears renderer if it is still the given one
+    void releaseRenderer(IRenderer renderer) {
+        synchronized (this) {
+            if (_renderer != renderer)
+                return;
+            _renderer = null;
         }
+        Log.v(TAG, "releaseRenderer " + renderer);
     }
 
     @Override
@@ -199,14 +332,21 @@ public final class ExecutionEnvironment extends Service
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
+        _bound = true;
         return _binder;
     }
 
+    private Wrapper.LazyClass registerClass(V8Object namespace, String name, Class<?> cls, Class<?>[] ctorArgs, Wrapper.LazyClass parent) {
+        Wrapper.LazyClass lazyClass = Wrapper.generateLazyClass(this, namespace, name, cls, ctorArgs, parent);
+        _classes.add(lazyClass);
+        return lazyClass;
+    }
+
     void registerRuntime() {
         _timers = new Timers(this);
         V8Object v8Console = new V8Object(_v8);
         _v8.add("console", v8Console);
-        v8Console.registerJavaMethod(new Console.LogMethod(), "log");
+        Console.register(v8Console, _logSink);
         v8Console.close();
 
         V8Object v8FD = new V8Object(_v8);
@@ -271,6 +411,27 @@ public final class ExecutionEnvironment extends Service
                         if (_renderer != null)
                             _renderer.setFullScreen(_fullScreen);
                         break;
+                    case "layer-budget":
+                        _layerManager.setBudget(TypeConverter.toInteger(v8Array.get(1)));
+                        break;
+                    case "track-handles":
+                        _handleTracker.setMode(HandleTracker.parseMode(v8Array.get(1)));
+                        break;
+                    case "track-allocations":
+                        _allocationTracker.setEnabled(TypeConverter.toBoolean(v8Array.get(1)));
+                        break;
+                    case "warm-start":
+                        final boolean warm = TypeConverter.toBoolean(v8Array.get(1));
+                        _uiHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                setWarm(warm);
+                            }
+                        });
+                        break;
+                    case "log-file":
+                        _logSink.setFileEnabled(TypeConverter.toBoolean(v8Array.get(1)));
+                        break;
                     case "keep-screen-on":
                         _keepScreenOn = TypeConverter.toBoolean(v8Array.get(1));
                         if (_renderer != null)
@@ -282,6 +443,47 @@ public final class ExecutionEnvironment extends Service
             }
         }, "setDeviceFeature");
 
+        v8FD.registerJavaMethod(new JavaVoidCallback() {
+            @Override
+            public void invoke(V8Object v8Object, V8Array v8Array) {
+                if (v8Array.length() < 2)
+                    throw new RuntimeException("setLogLevel requires tag and level");
+                _logSink.setLevel(v8Array.get(0).toString(), LogSink.parseLevel(v8Array.get(1)));
+            }
+        }, "setLogLevel");
+
+        v8FD.registerJavaMethod(new JavaCallback() {
+            @Override
+            public Object invoke(V8Object v8Object, V8Array v8Array) {
+                return _startupTimeline.toObject(_v8);
+            }
+        }, "getStartupTimeline");
+
+        v8FD.registerJavaMethod(new JavaCallback() {
+            @Override
+            public Object invoke(V8Object v8Object, V8Array v8Array) {
+                if (v8Array.length() < 1)
+                    throw new RuntimeException("preload requires url or array of urls");
+                int priority = ImageLoader.parsePriority(v8Array.length() > 1? v8Array.get(1): null);
+                Object urls = v8Array.get(0);
+                int n = 0;
+                try {
+                    if (urls instanceof V8Array) {
+                        V8Array array = (V8Array)urls;
+                        for(int i = 0, size = array.length(); i < size; ++i) {
+                            if (_imageLoader.preload(array.getString(i), priority))
+                                ++n;
+                        }
+                    } else if (urls instanceof String && _imageLoader.preload((String)urls, priority))
+                        ++n;
+                } finally {
+                    if (urls instanceof Releasable)
+                        ((Releasable)urls).release();
+                }
+                return n;
+            }
+        }, "preload");
+
         v8FD.registerJavaMethod(new JavaVoidCallback() {
             @Override
             public void invoke(V8Object v8Object, V8Array v8Array) {
@@ -293,28 +495,121 @@ public final class ExecutionEnvironment extends Service
             @Override
             public void invoke(V8Object v8Object, V8Array v8Array) {
                 Log.i(TAG, "closing App: " + v8Array);
+                _uiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        releaseWarm("app closed");
+                    }
+                });
                 if (_renderer != null)
                     _renderer.closeApp();
             }
         }, "closeApp");
 
-        V8Object objectProto    = Wrapper.generateClass(this, _v8, v8FD, "Object", BaseObject.class, new Class<?>[] { IExecutionEnvironment.class });
-        V8Object elementProto   = Wrapper.generateClass(this, _v8, v8FD, "Element", Element.class, new Class<?>[] { IExecutionEnvironment.class });
-        elementProto.setPrototype(objectProto);
-        V8Object rectangleProto = Wrapper.generateClass(this, _v8, v8FD, "Rectangle", Rectangle.class, new Class<?>[] { IExecutionEnvironment.class });
-        rectangleProto.setPrototype(elementProto);
-        V8Object imageProto     = Wrapper.generateClass(this, _v8, v8FD, "Image", Image.class, new Class<?>[] { IExecutionEnvironment.class });
-        imageProto.setPrototype(elementProto);
-        V8Object textProto      = Wrapper.generateClass(this, _v8, v8FD, "Text", Text.class, new Class<?>[] { IExecutionEnvironment.class });
-        textProto.setPrototype(elementProto);
-        V8Object inputProto     = Wrapper.generateClass(this, _v8, v8FD, "Input", Input.class, new Class<?>[] { IExecutionEnvironment.class });
-        inputProto.setPrototype(elementProto);
-        V8Object spinnerProto     = Wrapper.generateClass(this, _v8, v8FD, "Spinner", Spinner.class, new Class<?>[] { IExecutionEnvironment.class });
-        spinnerProto.setPrototype(elementProto);
-        V8Object localStorageProto = Wrapper.generateClass(this, _v8, v8FD, "LocalStorage", LocalStorage.class, new Class<?>[] { IExecutionEnvironment.class });
-        localStorageProto.setPrototype(objectProto);
-        V8Object videoPlayerProto = Wrapper.generateClass(this, _v8, v8FD, "VideoPlayer", VideoPlayer.class, new Class<?>[] { IExecutionEnvironment.class });
-        videoPlayerProto.setPrototype(objectProto);
+        v8FD.registerJavaMethod(new JavaCallback() {
+            @Override
+            public Object invoke(V8Object v8Object, V8Array v8Array) {
+                V8Object stats = new V8Object(_v8);
+                FrameScheduler scheduler = _frameScheduler;
+                if (scheduler != null) {
+                    stats.add("refreshRate", scheduler.getRefreshRate());
+                    stats.add("budget", scheduler.getFrameIntervalNanos() / 1000000.0);
+                    stats.add("frames", scheduler.getFrames());
+                    stats.add("dropped", scheduler.getDroppedFrames());
+                    stats.add("overBudget", scheduler.getOverBudgetFrames());
+                    stats.add("lastFrameDuration", scheduler.getLastFrameDurationNanos() / 1000000.0);
+                    stats.add("maxFrameDuration", scheduler.getMaxFrameDurationNanos() / 1000000.0);
+                }
+                RenderStats renderStats = _renderStats;
+                stats.add("recorded", renderStats.recorded);
+                stats.add("replayed", renderStats.replayed);
+                stats.add("totalRecorded", renderStats.totalRecorded);
+                stats.add("totalReplayed", renderStats.totalReplayed);
+                stats.add("visited", renderStats.visited);
+                stats.add("culled", renderStats.culled);
+                stats.add("drawn", renderStats.drawn);
+                stats.add("totalVisited", renderStats.totalVisited);
+                stats.add("totalCulled", renderStats.totalCulled);
+                stats.add("totalDrawn", renderStats.totalDrawn);
+                LayerManager layers = _layerManager;
+                stats.add("layers", layers.getLayers());
+                stats.add("layerBytes", layers.getBytes());
+                stats.add("layerBudget", layers.getBudget());
+                stats.add("layersPromoted", layers.getPromoted());
+                stats.add("layersDemoted", layers.getDemoted());
+                stats.add("layersEvicted", layers.getEvicted());
+                stats.add("layersRejected", layers.getRejected());
+                stats.add("layersRendered", layers.getRendered());
+                stats.add("layersReused", layers.getReused());
+                stats.add("scrollers", layers.getScrollers());
+                stats.add("tileBytes", layers.getTileBytes());
+                stats.add("tilesRendered", layers.getTilesRendered());
+                stats.add("tilesReused", layers.getTilesReused());
+                stats.add("retainedPictures", layers.getRetainedPictures());
+                stats.add("picturesDropped", layers.getPicturesDropped());
+                stats.add("commandFlushes", _commandBuffer.getFlushes());
+                stats.add("commands", _commandBuffer.getCommands());
+                stats.add("commandsSkipped", _commandBuffer.getSkipped());
+                stats.add("workers", _workerPool.getWorkers());
+                stats.add("logDropped", _logSink.getDropped());
+                stats.add("imagesPreloaded", _imageLoader.getPreloaded());
+                stats.add("imagePreloadHits", _imageLoader.getPreloadHits());
+                stats.add("objects", _objects.size());
+                stats.add("objectCapacity", _objects.capacity());
+                if (_allocationTracker.isEnabled()) {
+                    stats.add("allocations", _allocationTracker.getLastCount());
+                    stats.add("allocatedBytes", _allocationTracker.getLastSize());
+                    stats.add("allocationViolations", _allocationTracker.getViolations());
+                }
+                return stats;
+            }
+        }, "getFrameStats");
+
+        v8FD.registerJavaMethod(new JavaVoidCallback() {
+            @Override
+            public void invoke(V8Object v8Object, V8Array v8Array) {
+                _commandBuffer.flush(v8Array);
+            }
+        }, "flushCommands");
+
+        v8FD.registerJavaMethod(new JavaCallback() {
+            @Override
+            public Object invoke(V8Object v8Object, V8Array v8Array) {
+                return _handleTracker.dump(_v8);
+            }
+        }, "getHandleStats");
+
+        v8FD.registerJavaMethod(new JavaVoidCallback() {
+            @Override
+            public void invoke(V8Object v8Object, V8Array v8Array) {
+                _handleTracker.check((long)v8Array.getDouble(0));
+            }
+        }, "checkHandles");
+
+        v8FD.registerJavaMethod(new JavaVoidCallback() {
+            @Override
+            public void invoke(V8Object v8Object, V8Array v8Array) {
+                _commandBuffer.setGeometry(v8Array);
+            }
+        }, "setGeometryBatch");
+
+        V8Object styleIds = new V8Object(_v8);
+        for(int i = 0, n = StyleRegistry.size(); i < n; ++i)
+            styleIds.add(StyleRegistry.getName(i), i);
+        v8FD.add("styleIds", styleIds);
+        styleIds.close();
+
+        final Class<?>[] ctorArgs = new Class<?>[] { IExecutionEnvironment.class };
+        Wrapper.LazyClass objectClass = registerClass(v8FD, "Object", BaseObject.class, ctorArgs, null);
+        Wrapper.LazyClass elementClass = registerClass(v8FD, "Element", Element.class, ctorArgs, objectClass);
+        registerClass(v8FD, "Rectangle", Rectangle.class, ctorArgs, elementClass);
+        registerClass(v8FD, "Image", Image.class, ctorArgs, elementClass);
+        registerClass(v8FD, "Text", Text.class, ctorArgs, elementClass);
+        registerClass(v8FD, "Input", Input.class, ctorArgs, elementClass);
+        registerClass(v8FD, "Spinner", Spinner.class, ctorArgs, elementClass);
+        registerClass(v8FD, "LocalStorage", LocalStorage.class, ctorArgs, objectClass);
+        registerClass(v8FD, "VideoPlayer", VideoPlayer.class, ctorArgs, objectClass);
+        registerClass(v8FD, "Worker", Worker.class, new Class<?>[] { IExecutionEnvironment.class, String.class }, objectClass);
 
         v8FD.close();
 
@@ -323,42 +618,39 @@ public final class ExecutionEnvironment extends Service
         v8Module.close();
     }
 
-    private static String readScript(InputStream input) throws IOException {
-            final int BufferSize = 128 * 1024;
-
-            final byte[] buffer = new byte[BufferSize];
-            final ByteArrayOutputStream scriptStream = new ByteArrayOutputStream();
-            int r;
-            do {
-                r = input.read(buffer);
-                if (r <= 0)
-                    break;
-                scriptStream.write(buffer, 0, r);
-            } while(r == BufferSize);
-            Log.v(TAG, "read " + scriptStream.size() + " bytes...");
-            return scriptStream.toString();
-    }
-
     private void start() {
         Log.i(TAG, "starting execution environment...");
 
+        _frameScheduler = new FrameScheduler(this, _executor, this);
+        _renderThread = new RenderThread(this);
+        _logSink.start(new File(getCacheDir(), "log"));
+        _imageLoader.preloadManifest(); //decoding overlaps with runtime creation and script compilation
+
         Log.v(TAG, "creating v8 runtime...");
         _v8 = V8.createV8Runtime();
+        _startupTimeline.mark(StartupTimeline.RuntimeCreated);
+        _handleTracker.attach(_v8);
         Log.v(TAG, "registering runtime...");
         registerRuntime();
+        _startupTimeline.mark(StartupTimeline.RuntimeRegistered);
 
         Log.v(TAG, "executing main script...");
-        String script;
         final String assetName = "main.js";
+        long started = SystemClock.uptimeMillis();
+        int chunks;
         try {
-            InputStream input = getAssets().open(assetName);
-            script = readScript(input);
+            ByteBuffer data = ScriptLoader.read(getAssets(), assetName);
+            _startupTimeline.mark(StartupTimeline.ScriptRead);
+            chunks = ScriptLoader.execute(_v8, data, assetName);
         } catch (IOException e) {
             Log.e(TAG, "failed opening main.js", e);
             return;
         }
-        _v8.executeVoidScript(script, assetName, 0);
-        _exports = _v8.getObject("module").getObject("exports");
+        _startupTimeline.mark(StartupTimeline.ScriptExecuted);
+        Log.i(TAG, assetName + ": " + chunks + " chunks loaded, compiled and executed in " + (SystemClock.uptimeMillis() - started) + " ms");
+        V8Object module = _v8.getObject("module");
+        _exports = module.getObject("exports");
+        module.close();
 
         Log.v(TAG, "creating root element...");
         _rootObject = _v8.executeObjectScript("new fd.Element()");
@@ -393,22 +685,42 @@ public final class ExecutionEnvironment extends Service
             _exports.executeJSFunction("run", _rootObject);
 
             Log.i(TAG, "run() finished");
+            _startupTimeline.mark(StartupTimeline.Run);
             _exports.close();
             _exports = null;
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (!_bound && level >= TRIM_MEMORY_BACKGROUND)
+            releaseWarm("trim memory, level " + level); //cached process, let it go before being killed
+        if (level < TRIM_MEMORY_RUNNING_LOW || _executor.isShutdown())
+            return;
+        Log.i(TAG, "trim memory, level " + level + ", dropping layers and display lists");
+        _executor.execute(new SafeRunnable() {
+            @Override
+            public void doRun() {
+                _layerManager.clear();
+            }
+        });
+    }
+
     @Override
     public void onDestroy() {
         Future<Void> future = _executor.submit(new Callable<Void>() {
             @Override
             public Void call() {
             _timers.discard();
+            _frameScheduler.discard();
+            _renderThread.discard();
+            _layerManager.clear();
 
             try { _rootObject.executeVoidFunction("discard", null); }
             catch(Exception e) { Log.e(TAG, "discard failed", e); }
 
-            Vector<BaseObject> objects = new Vector<>(_objects.values());
+            List<BaseObject> objects = _objects.values();
             for(BaseObject o : objects) {
                 if (o != null)
                     o.discard();
@@ -418,6 +730,7 @@ public final class ExecutionEnvironment extends Service
                 _rootElement.discard();
                 _rootElement = null;
             }
+            _workerPool.shutdown(); //discarded workers close their isolates on pool threads
 
             _executor.execute(new SafeRunnable() {
                 @Override
@@ -432,6 +745,12 @@ public final class ExecutionEnvironment extends Service
                     }
 
                     _objects.clear();
+                    _argumentPool.clear();
+                    for(Wrapper.LazyClass cls : _classes)
+                        cls.release(); //prototypes of classes never instantiated
+                    _classes.clear();
+                    _handleTracker.log();
+                    _handleTracker.detach();
                     try { _v8.close(); } catch (Exception ex) { Log.w(TAG, "v8 shutdown", ex); }
                 }
             });
@@ -455,6 +774,7 @@ public final class ExecutionEnvironment extends Service
 
         _executor = null;
         _objects.clear();
+        _logSink.stop();
     }
 
     @Override
@@ -464,7 +784,7 @@ public final class ExecutionEnvironment extends Service
 
     @Override
     public int nextObjectId() {
-        return _nextObjectId++;
+        return _objects.allocate();
     }
 
     @Override
@@ -519,6 +839,7 @@ public final class ExecutionEnvironment extends Service
     }
 
     protected void setSurfaceFrame(final Rect rect) {
+        _startupTimeline.mark(StartupTimeline.SurfaceGeometry);
         _executor.execute(new SafeRunnable() {
             @Override
             public void doRun() {
@@ -551,6 +872,34 @@ public final class ExecutionEnvironment extends Service
     public void stopAnimation(Element el)
     { _elementUpdatersStop.add(el); }
 
+    @Override
+    public RenderStats getRenderStats()
+    { return _renderStats; }
+
+    @Override
+    public LayerManager getLayerManager()
+    { return _layerManager; }
+
+    @Override
+    public HandleTracker getHandleTracker()
+    { return _handleTracker; }
+
+    @Override
+    public ArgumentPool getArgumentPool()
+    { return _argumentPool; }
+
+    @Override
+    public WorkerPool getWorkerPool()
+    { return _workerPool; }
+
+    @Override
+    public LogSink getLogSink()
+    { return _logSink; }
+
+    @Override
+    public long getFrameTime()
+    { return _frameTime != 0? _frameTime: SystemClock.uptimeMillis(); }
+
     private int getDebugColorIndex() {
         int index = _debugColorIndex++ % 3;
         int debugAlpha = 0x40;
@@ -571,90 +920,117 @@ public final class ExecutionEnvironment extends Service
         if (_rootElement == null || holder == null || holder.getSurface() == null)
             return;
 
-        Rect rect = popDirtyRect();
-        if (rect != null)
-            Log.v(TAG, "paint: rect: " + rect.toString());
-        else {
-            Log.v(TAG, "paint: dirty rect is empty, skipping");
+        RenderThread renderThread = _renderThread;
+        if (renderThread == null || renderThread.isBusy()) {
+            Log.v(TAG, "paint: previous frame is still in flight, postponing");
+            return; //dirty elements are kept, frame will be requested after presentation
+        }
+
+        DirtyRegion region = popDirtyRegion();
+        if (region == null) {
+            Log.v(TAG, "paint: dirty region is empty, skipping");
             return;
         }
 
-        Canvas canvas = null;
-        Log.v(TAG, "paint: " + rect);
+        if (Log.isLoggable(TAG, Log.VERBOSE))
+            Log.v(TAG, "paint: " + region);
+        _renderStats.beginFrame();
+        RenderThread.Frame frame = renderThread.obtainFrame();
         try {
-            canvas = holder.lockCanvas(rect);
-            if (canvas != null) {
-                PaintState paint = new PaintState(canvas);
-
-                {
-                    Paint bgPaint = new Paint();
-                    bgPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
-                    canvas.drawRect(rect, bgPaint);
+            Canvas canvas = frame.beginRecording(holder, region);
+            try {
+                _allocationTracker.begin();
+                for(int i = 0, n = region.size(); i < n; ++i) {
+                    Rect rect = region.get(i);
+                    canvas.save();
+                    canvas.clipRect(rect);
+                    _rootElement.paint(_rootPaintState.reset(canvas));
+                    canvas.restore();
+
+//                    {
+//                        Paint updatePaint = new Paint();
+//                        updatePaint.setColor(getDebugColorIndex());
+//                        canvas.drawRect(rect, updatePaint);
+//                    }
                 }
-
-                _rootElement.paint(paint);
-
-//                {
-//                    Paint updatePaint = new Paint();
-//                    updatePaint.setColor(getDebugColorIndex());
-//                    canvas.drawRect(rect, updatePaint);
-//                }
+            } finally {
+                _allocationTracker.end(_renderStats.recorded == 0);
+                frame.endRecording();
             }
+            _layerManager.takeRasters(frame.rasters);
+            _layerManager.onFrame();
+            renderThread.submit(frame);
+            _startupTimeline.mark(StartupTimeline.FirstPaint);
         } catch (Exception e) {
             Log.e(TAG, "repaint failed", e);
-        } finally {
-            if (canvas != null)
-                holder.unlockCanvasAndPost(canvas);
         }
+        _renderStats.endFrame();
+        if (Log.isLoggable(TAG, Log.VERBOSE))
+            Log.v(TAG, "paint: " + _renderStats);
     }
 
-    public void paint() {
-        synchronized (this) {
-            if (_paintScheduled || _executor == null || _executor.isShutdown() || _rootElement == null)
-                return;
-            _paintScheduled = true;
-            Log.v(TAG, "paint scheduled");
+    @Override
+    public void onFramePresented(boolean fullRedraw) {
+        _startupTimeline.mark(StartupTimeline.FirstFrame);
+        if (fullRedraw)
+            update(_rootElement);
+
+        boolean dirty;
+        synchronized (_updatedElements) {
+            dirty = !_updatedElements.isEmpty();
         }
-        _executor.execute(new SafeRunnable() {
-            @Override
-            public void doRun() {
-                synchronized (this) { _paintScheduled = false; }
-                ExecutionEnvironment.this.paint(_surfaceHolder);
+        if (dirty)
+            paint();
+    }
 
-                if (_elementUpdaters.isEmpty()) {
-                    return;
-                }
-                Iterator<Map.Entry<Element, ElementUpdater>> it =_elementUpdaters.entrySet().iterator();
-                while(it.hasNext()) {
-                    Map.Entry<Element, ElementUpdater> entry = it.next();
-                    if (!entry.getValue().tick())
-                        it.remove();
-                }
+    public void paint() {
+        FrameScheduler scheduler = _frameScheduler;
+        if (scheduler == null || _executor == null || _executor.isShutdown() || _rootElement == null)
+            return;
+        scheduler.request();
+    }
 
-                for(Element el : _elementUpdatersStop) //avoid concurrent modification (element can call stopAnimation at any time
-                    _elementUpdaters.remove(el);
-                _elementUpdatersStop.clear();
+    @Override
+    public void onFrame(long frameTimeNanos) {
+        _frameTime = frameTimeNanos / 1000000;
+        paint(_surfaceHolder);
 
-                if (!_elementUpdaters.isEmpty())
-                    ExecutionEnvironment.this.paint(); //restart
-            }
-        });
+        if (_elementUpdaters.isEmpty()) {
+            return;
+        }
+        Iterator<Map.Entry<Element, ElementUpdater>> it =_elementUpdaters.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Element, ElementUpdater> entry = it.next();
+            if (!entry.getValue().tick(_frameTime))
+                it.remove();
+        }
+
+        for(Element el : _elementUpdatersStop) //avoid concurrent modification (element can call stopAnimation at any time
+            _elementUpdaters.remove(el);
+        _elementUpdatersStop.clear();
+
+        if (!_elementUpdaters.isEmpty())
+            paint(); //restart on next vsync
     }
 
-    private Rect popDirtyRect() {
+    private DirtyRegion popDirtyRegion() {
         Element root = _rootElement;
-        if (root == null || _updatedElements.isEmpty() || _renderer == null)
+        if (root == null || _renderer == null)
             return null;
 
-        //Log.v(TAG, "popDirtyRect: " + _updatedElements.size() + " elements");
         final Rect clipRect = _surfaceGeometry;
-        Rect combinedRect = new Rect();
-        for(Element el : _updatedElements) {
-            Rect elementRect = el.getRedrawRect(clipRect);
-            combinedRect.union(elementRect);
+        DirtyRegion region = _dirtyRegion;
+        region.clear();
+        synchronized (_updatedElements) {
+            if (_updatedElements.isEmpty())
+                return null;
+            //Log.v(TAG, "popDirtyRegion: " + _updatedElements.size() + " elements");
+            for(Element el : _updatedElements) {
+                region.add(el.getRedrawRect(clipRect));
+            }
+            _updatedElements.clear();
         }
-        _updatedElements.clear();
-        return !combinedRect.isEmpty()? combinedRect: null;
+        return !region.isEmpty()? region: null;
     }
 
     public Future<Boolean> sendEvent(final String keyName, final KeyEvent event) {
@@ -753,6 +1129,50 @@ public final class ExecutionEnvironment extends Service
         synchronized (this) { _resources.add(new WeakReference<>(res)); }
     }
 
+    //any thread, views shown while no activity is bound wait in detached views
+    @Override
+    public void attachView(final View view, final ViewGroup.LayoutParams lp) {
+        _uiHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ViewGroup rootView = _rootView;
+                if (rootView == null) {
+                    if (lp != null)
+                        view.setLayoutParams(lp);
+                    if (view.getParent() == null && !_detachedViews.contains(view)) {
+                        view.setVisibility(View.VISIBLE);
+                        _detachedViews.add(view);
+                    }
+                } else if (view.getParent() == null) {
+                    Log.d(TAG, "adding view to layout...");
+                    view.setVisibility(View.VISIBLE);
+                    if (lp != null)
+                        rootView.addView(view, lp);
+                    else
+                        rootView.addView(view);
+                } else if (view.getParent() == rootView && lp != null)
+                    rootView.updateViewLayout(view, lp);
+            }
+        });
+    }
+
+    //any thread, discarded or hidden view must not come back with the next activity
+    @Override
+    public void removeView(final View view) {
+        _uiHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                view.setVisibility(View.GONE);
+                _detachedViews.remove(view);
+                ViewParent parent = view.getParent();
+                if (parent instanceof ViewGroup) {
+                    Log.d(TAG, "removing view from layout...");
+                    ((ViewGroup)parent).removeView(view);
+                }
+            }
+        });
+    }
+
     @Override
     public void focusView(View view, boolean set) {
         Log.v(TAG, "focusView: " + view + ", set: " + set);
@@ -0,0 +1,204 @@
+package com.pureqml.android;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.WindowManager;
+
+import java.util.concurrent.ExecutorService;
+
+//coalesces frame requests and runs at most one frame per vsync on the js executor
+final class FrameScheduler implements Choreographer.FrameCallback {
+    private static final String TAG = "FrameScheduler";
+    private static final float  DefaultRefreshRate = 60;
+
+    interface Client {
+        void onFrame(long frameTimeNanos);
+    }
+
+    private final Client            _client;
+    private final ExecutorService   _executor;
+    private HandlerThread           _thread;
+    private Handler                 _handler;
+    private Choreographer           _choreographer;
+    private float                   _refreshRate = DefaultRefreshRate;
+    private long                    _frameIntervalNanos = (long)(1000000000 / DefaultRefreshRate);
+
+    //guarded by this
+    private boolean                 _requested;     //waiting for vsync
+    private boolean                 _running;       //frame is executing on js thread
+    private boolean                 _again;         //frame requested while running
+    private long                    _frameTimeNanos;
+    private long                    _lastFrameTimeNanos;
+    private boolean                 _continuous;    //previous frame requested the next one
+
+    //stats, guarded by this
+    private long                    _frames;
+    private long                    _droppedFrames;
+    private long                    _overBudgetFrames;
+    private long                    _lastFrameDurationNanos;
+    private long                    _maxFrameDurationNanos;
+
+    private final Runnable _postCallback = new Runnable() {
+        @Override
+        public void run() {
+            if (_choreographer == null)
+                _choreographer = Choreographer.getInstance();
+            _choreographer.postFrameCallback(FrameScheduler.this);
+        }
+    };
+
+    private final Runnable _frame = new SafeRunnable() {
+        @Override
+        public void doRun() {
+            long frameTime;
+            synchronized (FrameScheduler.this) {
+                frameTime = _frameTimeNanos;
+            }
+            long started = System.nanoTime();
+            try {
+                _client.onFrame(frameTime);
+            } finally {
+                frameFinished(System.nanoTime() - started);
+            }
+        }
+    };
+
+    FrameScheduler(Context context, ExecutorService executor, Client client) {
+        _client = client;
+        _executor = executor;
+
+        try {
+            WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+            Display display = wm != null? wm.getDefaultDisplay(): null;
+            float refreshRate = display != null? display.getRefreshRate(): 0;
+            if (refreshRate >= 1) {
+                _refreshRate = refreshRate;
+                _frameIntervalNanos = (long)(1000000000 / refreshRate);
+            }
+        } catch (Exception ex) {
+            Log.w(TAG, "failed to get refresh rate, assuming " + DefaultRefreshRate, ex);
+        }
+        Log.i(TAG, "refresh rate " + _refreshRate + ", frame budget " + (_frameIntervalNanos / 1000) + "us");
+
+        _thread = new HandlerThread("FrameThread", Process.THREAD_PRIORITY_DISPLAY);
+        _thread.start();
+        _handler = new Handler(_thread.getLooper());
+    }
+
+    //may be called from any thread
+    void request() {
+        Handler handler;
+        synchronized (this) {
+            if (_running) {
+                _again = true;
+                return;
+            }
+            if (_requested || _handler == null)
+                return;
+            _requested = true;
+            handler = _handler;
+        }
+        handler.post(_postCallback);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        synchronized (this) {
+            if (!_requested || _executor.isShutdown())
+                return;
+            _requested = false;
+            _running = true;
+
+            if (_continuous && _lastFrameTimeNanos != 0) {
+                long missed = (frameTimeNanos - _lastFrameTimeNanos) / _frameIntervalNanos - 1;
+                if (missed > 0)
+                    _droppedFrames += missed;
+            }
+            _lastFrameTimeNanos = frameTimeNanos;
+            _frameTimeNanos = frameTimeNanos;
+        }
+        _executor.execute(_frame);
+    }
+
+    private void frameFinished(long duration) {
+        boolean again;
+        synchronized (this) {
+            _running = false;
+            again = _again;
+            _again = false;
+            _continuous = again;
+
+            ++_frames;
+            _lastFrameDurationNanos = duration;
+            if (duration > _maxFrameDurationNanos)
+                _maxFrameDurationNanos = duration;
+            if (duration > _frameIntervalNanos)
+                ++_overBudgetFrames;
+        }
+        if (duration > _frameIntervalNanos)
+            Log.d(TAG, "frame took " + (duration / 1000) + "us, budget " + (_frameIntervalNanos / 1000) + "us");
+        if (again)
+            request();
+    }
+
+    synchronized long getFrameTimeNanos() {
+        return _frameTimeNanos;
+    }
+
+    long getFrameIntervalNanos() {
+        return _frameIntervalNanos;
+    }
+
+    float getRefreshRate() {
+        return _refreshRate;
+    }
+
+    synchronized long getFrames() {
+        return _frames;
+    }
+
+    synchronized long getDroppedFrames() {
+        return _droppedFrames;
+    }
+
+    synchronized long getOverBudgetFrames() {
+        return _overBudgetFrames;
+    }
+
+    synchronized long getLastFrameDurationNanos() {
+        return _lastFrameDurationNanos;
+    }
+
+    synchronized long getMaxFrameDurationNanos() {
+        return _maxFrameDurationNanos;
+    }
+
+    void discard() {
+        final HandlerThread thread;
+        final Handler handler;
+        synchronized (this) {
+            thread = _thread;
+            handler = _handler;
+            _thread = null;
+            _handler = null;
+            _requested = false;
+            _again = false;
+        }
+        if (handler == null)
+            return;
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (_choreographer != null)
+                    _choreographer.removeFrameCallback(FrameScheduler.this);
+                thread.quit();
+            }
+        });
+    }
+}
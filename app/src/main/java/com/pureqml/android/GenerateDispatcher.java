@@ -0,0 +1,13 @@
+package com.pureqml.android;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//generates <Class>Dispatcher implementing IDispatcher for all public methods declared in annotated class
+//Wrapper falls back to reflection for classes without dispatcher
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateDispatcher {
+}
@@ -0,0 +1,214 @@
+package com.pureqml.android;
+
+import android.util.Log;
+
+import com.eclipsesource.v8.ReferenceHandler;
+import com.eclipsesource.v8.V8;
+import com.eclipsesource.v8.V8Object;
+import com.eclipsesource.v8.V8Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+//debug mode: accounts live v8 handles by type and by creating call site
+//bridge invocations run inside scopes, handles created by invocation and still alive after it are attributed to the method
+//handles the native side keeps on purpose (listeners, timers, pending requests) show up there too, leaks are the ones that keep growing
+public final class HandleTracker implements ReferenceHandler {
+    static final String TAG = "HandleTracker";
+
+    static final int    Off         = 0;
+    static final int    Count       = 1; //types only
+    static final int    Sites       = 2; //types and creation stack frame, slow
+    static final int    MaxScopeDepth = 32;
+    static final int    DumpLimit   = 16;
+
+    private static final String UnknownSite = "unknown";
+
+    private final IdentityHashMap<V8Value, String>  _handles = new IdentityHashMap<>();
+    private final HashMap<String, long[]>           _scopes = new HashMap<>(); //name -> calls, escaped handles
+    private final String[]                          _scopeNames = new String[MaxScopeDepth];
+    private final int[]                             _scopeLive = new int[MaxScopeDepth];
+    private int                                     _depth;
+    private V8                                      _v8;
+    private int                                     _mode;
+    private long                                    _created;
+    private long                                    _disposed;
+
+    void attach(V8 v8) {
+        _v8 = v8;
+        if (Log.isLoggable(TAG, Log.DEBUG))
+            setMode(Sites);
+        else if (_mode != Off)
+            v8.addReferenceHandler(this);
+    }
+
+    void detach() {
+        if (_v8 != null && _mode != Off)
+            _v8.removeReferenceHandler(this);
+        _v8 = null;
+    }
+
+    static int parseMode(Object value) {
+        if (value instanceof String) {
+            switch((String)value) {
+                case "sites":   return Sites;
+                case "count":   return Count;
+                default:        return TypeConverter.toBoolean(value)? Count: Off;
+            }
+        } else
+            return TypeConverter.toBoolean(value)? Count: Off;
+    }
+
+    void setMode(int mode) {
+        if (_mode == mode)
+            return;
+        Log.i(TAG, "handle tracking mode " + mode);
+        if (_v8 != null) {
+            if (_mode == Off)
+                _v8.addReferenceHandler(this);
+            else if (mode == Off)
+                _v8.removeReferenceHandler(this);
+        }
+        _mode = mode;
+        if (mode == Off) {
+            _handles.clear();
+            _scopes.clear();
+            _depth = 0;
+        }
+    }
+
+    boolean isEnabled() {
+        return _mode != Off;
+    }
+
+    private static String getSite() {
+        StackTraceElement[] stack = new Throwable().getStackTrace();
+        for(StackTraceElement frame : stack) {
+            String cls = frame.getClassName();
+            if (cls.startsWith("com.eclipsesource.v8.") || cls.equals(HandleTracker.class.getName()))
+                continue;
+            return cls.substring(cls.lastIndexOf('.') + 1) + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+        }
+        return UnknownSite;
+    }
+
+    @Override
+    public void v8HandleCreated(V8Value object) {
+        ++_created;
+        _handles.put(object, _mode == Sites? getSite(): UnknownSite);
+    }
+
+    @Override
+    public void v8HandleDisposed(V8Value object) {
+        ++_disposed;
+        _handles.remove(object);
+    }
+
+    void enter(String name) {
+        if (_mode == Off || _depth == MaxScopeDepth)
+            return;
+        _scopeNames[_depth] = name;
+        _scopeLive[_depth] = _handles.size();
+        ++_depth;
+    }
+
+    void exit() {
+        if (_mode == Off || _depth == 0)
+            return;
+        --_depth;
+        String name = _scopeNames[_depth];
+        _scopeNames[_depth] = null;
+        long[] stats = _scopes.get(name);
+        if (stats == null) {
+            stats = new long[2];
+            _scopes.put(name, stats);
+        }
+        ++stats[0];
+        stats[1] += _handles.size() - _scopeLive[_depth];
+    }
+
+    //live handles: tracked ones if tracking is enabled, all handles of the runtime otherwise
+    long getLive() {
+        return _mode != Off? _handles.size(): _v8 != null? _v8.getObjectReferenceCount(): 0;
+    }
+
+    private static List<Map.Entry<String, Long>> top(Map<String, Long> counts) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                long d = b.getValue() - a.getValue();
+                return d > 0? 1: d < 0? -1: 0;
+            }
+        });
+        return entries.size() > DumpLimit? entries.subList(0, DumpLimit): entries;
+    }
+
+    private static void increment(Map<String, Long> counts, String key, long value) {
+        Long count = counts.get(key);
+        counts.put(key, count != null? count + value: value);
+    }
+
+    //handle counts by type, site and scope, computed before any handle of the result is created
+    V8Object dump(V8 v8) {
+        HashMap<String, Long> types = new HashMap<>();
+        HashMap<String, Long> sites = new HashMap<>();
+        HashMap<String, Long> scopes = new HashMap<>();
+        for(Map.Entry<V8Value, String> entry : _handles.entrySet()) {
+            increment(types, entry.getKey().getClass().getSimpleName(), 1);
+            increment(sites, entry.getValue(), 1);
+        }
+        for(Map.Entry<String, long[]> entry : _scopes.entrySet()) {
+            if (entry.getValue()[1] != 0)
+                increment(scopes, entry.getKey(), entry.getValue()[1]);
+        }
+        long live = getLive();
+        long references = v8.getObjectReferenceCount();
+
+        V8Object result = new V8Object(v8);
+        result.add("mode", _mode);
+        result.add("live", (double)live);
+        result.add("references", (double)references);
+        result.add("created", (double)_created);
+        result.add("disposed", (double)_disposed);
+        String[] names = { "types", "sites", "scopes" };
+        List<HashMap<String, Long>> groups = Arrays.asList(types, sites, scopes);
+        for(int i = 0; i < names.length; ++i) {
+            V8Object group = new V8Object(v8);
+            for(Map.Entry<String, Long> entry : top(groups.get(i)))
+                group.add(entry.getKey(), (double)entry.getValue());
+            result.add(names[i], group);
+            group.close();
+        }
+        return result;
+    }
+
+    String summary() {
+        HashMap<String, Long> sites = new HashMap<>();
+        for(String site : _handles.values())
+            increment(sites, site, 1);
+        StringBuilder text = new StringBuilder();
+        text.append(getLive()).append(" live handles");
+        for(Map.Entry<String, Long> entry : top(sites))
+            text.append("\n  ").append(entry.getValue()).append(" ").append(entry.getKey());
+        return text.toString();
+    }
+
+    //throws if there are more live handles than baseline, used by tests and soak runs
+    void check(long baseline) {
+        long live = getLive();
+        if (live > baseline)
+            throw new IllegalStateException("handle leak: " + (live - baseline) + " over baseline, " + summary());
+    }
+
+    void log() {
+        if (_mode != Off)
+            Log.i(TAG, summary());
+    }
+}
@@ -0,0 +1,11 @@
+package com.pureqml.android;
+
+import com.eclipsesource.v8.V8Array;
+import com.pureqml.android.runtime.BaseObject;
+
+//reflection-free js method dispatch, implementations are generated from @GenerateDispatcher classes
+public interface IDispatcher {
+    //exported method names, method index is position in this array
+    String[] getMethodNames();
+    Object invoke(IExecutionEnvironment env, int method, BaseObject self, V8Array arguments);
+}
@@ -10,8 +10,13 @@ import com.eclipsesource.v8.V8;
 import com.eclipsesource.v8.V8Array;
 import com.eclipsesource.v8.V8Function;
 import com.eclipsesource.v8.V8Object;
+import com.pureqml.android.runtime.ArgumentPool;
 import com.pureqml.android.runtime.BaseObject;
 import com.pureqml.android.runtime.Element;
+import com.pureqml.android.runtime.LayerManager;
+import com.pureqml.android.runtime.LogSink;
+import com.pureqml.android.runtime.RenderStats;
+import com.pureqml.android.runtime.WorkerPool;
 
 import java.util.Timer;
 import java.util.concurrent.ExecutorService;
@@ -39,6 +44,13 @@ public interface IExecutionEnvironment {
 
     void startAnimation(Element el, float seconds);
     void stopAnimation(Element el);
+    long getFrameTime(); //uptime millis of the current frame
+    RenderStats getRenderStats();
+    LayerManager getLayerManager();
+    HandleTracker getHandleTracker();
+    ArgumentPool getArgumentPool();
+    WorkerPool getWorkerPool();
+    LogSink getLogSink();
 
     //image loader api
     AssetManager getAssets();
@@ -46,6 +58,10 @@ public interface IExecutionEnvironment {
 
     void register(IResource res);
 
+    //element views, any thread: kept aside while no activity is bound
+    void attachView(View view, ViewGroup.LayoutParams lp);
+    void removeView(View view);
+
     void focusView(View view, boolean set);
     void blockUiInput(boolean block);
 }
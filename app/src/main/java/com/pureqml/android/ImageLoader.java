@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.drawable.PictureDrawable;
+import android.os.Process;
 import android.util.Log;
 import android.util.LruCache;
 
@@ -12,16 +13,27 @@ import androidx.annotation.Nullable;
 import com.caverock.androidsvg.SVG;
 import com.caverock.androidsvg.SVGParseException;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class ImageLoader {
     public static final String TAG = "ImageLoader";
     public static final int CacheSize = 64 * 1024 * 1024;
+    public static final int PriorityHigh = 1;
+    public static final int PriorityLow = 0;
+    static final String ManifestName = "preload.json";
 
     private final IExecutionEnvironment   _env;
     private final ExecutorService         _threadPool;
@@ -33,12 +45,27 @@ public final class ImageLoader {
         }
     };
 
+    private final AtomicInteger           _preloaded = new AtomicInteger();
+    private final AtomicInteger           _preloadHits = new AtomicInteger();
+
     public ImageLoader(IExecutionEnvironment env) {
         _env = env;
         _threadPool = env.getThreadPool();
     }
 
+    //relative names are assets
+    public static URL parseUrl(String name) throws MalformedURLException {
+        if (!name.contains("://"))
+            name = "file:///" + name;
+        return new URL(name);
+    }
+
     private ImageHolder getHolder(URL url) {
+        return getHolder(url, PriorityHigh);
+    }
+
+    //returns cached or in-flight holder, starts loading otherwise
+    private ImageHolder getHolder(URL url, int priority) {
         synchronized (_cache) {
             ImageHolder holder = _cache.get(url);
             if (holder == null) {
@@ -50,7 +77,7 @@ public final class ImageLoader {
                     holder = new ImageStaticHolder(url);
                 }
                 _cache.put(url, holder);
-                _threadPool.execute(new ImageLoaderTask(url, holder));
+                _threadPool.execute(new ImageLoaderTask(url, holder, priority));
             }
             return holder;
         }
@@ -58,9 +85,79 @@ public final class ImageLoader {
 
     public void load(URL url, ImageLoadedCallback callback) {
         ImageHolder holder = getHolder(url);
+        if (holder.claimPreload())
+            _preloadHits.incrementAndGet();
         holder.notify(callback);
     }
 
+    //starts fetching and decoding ahead of load(), which joins in-flight entry later
+    public void preload(URL url, int priority) {
+        synchronized (_cache) {
+            if (_cache.get(url) != null)
+                return;
+            getHolder(url, priority).markPreload();
+        }
+        _preloaded.incrementAndGet();
+    }
+
+    public boolean preload(String name, int priority) {
+        try {
+            preload(parseUrl(name), priority);
+            return true;
+        } catch (MalformedURLException e) {
+            Log.w(TAG, "invalid preload url " + name, e);
+            return false;
+        }
+    }
+
+    public static int parsePriority(Object value) {
+        if (value instanceof Number)
+            return ((Number)value).intValue() > 0? PriorityHigh: PriorityLow;
+        if (value instanceof String)
+            return value.equals("low")? PriorityLow: PriorityHigh;
+        return PriorityHigh;
+    }
+
+    //preload.json next to main.js: { "images": [ "a.png", { "url": "b.png", "priority": "low" } ] }
+    public int preloadManifest() {
+        String manifest;
+        try {
+            manifest = ScriptLoader.load(_env.getAssets(), ManifestName);
+        } catch (FileNotFoundException e) {
+            return 0;
+        } catch (IOException e) {
+            Log.w(TAG, "failed reading " + ManifestName, e);
+            return 0;
+        }
+        int n = 0;
+        try {
+            JSONArray images = new JSONObject(manifest).optJSONArray("images");
+            if (images == null)
+                return 0;
+            for(int i = 0; i < images.length(); ++i) {
+                Object entry = images.get(i);
+                if (entry instanceof JSONObject) {
+                    JSONObject image = (JSONObject)entry;
+                    if (preload(image.getString("url"), parsePriority(image.opt("priority"))))
+                        ++n;
+                } else if (preload(entry.toString(), PriorityHigh))
+                    ++n;
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "invalid " + ManifestName, e);
+        }
+        Log.i(TAG, "preloading " + n + " images from " + ManifestName);
+        return n;
+    }
+
+    public int getPreloaded() {
+        return _preloaded.get();
+    }
+
+    public int getPreloadHits() {
+        return _preloadHits.get();
+    }
+
     public Bitmap getBitmap(URL url, int w, int h) {
         ImageHolder holder = getHolder(url);
         return holder.getBitmap(w, h);
@@ -69,15 +166,19 @@ public final class ImageLoader {
     private class ImageLoaderTask implements Runnable {
         final URL             _url;
         final ImageHolder     _holder; //fixme: make me weak
+        final int             _priority;
 
-        public ImageLoaderTask(URL url, ImageHolder holder) {
+        public ImageLoaderTask(URL url, ImageHolder holder, int priority) {
             _url = url;
             _holder = holder;
+            _priority = priority;
         }
 
         @Override
         public void run() {
             Log.i(TAG, "starting loading task on " + _url);
+            if (_priority == PriorityLow)
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND); //pool threads are shared, restored below
             try {
                 InputStream rawStream = null;
                 if (_url.getProtocol().equals("file")) {
@@ -95,6 +196,8 @@ public final class ImageLoader {
             } finally {
                 _holder.finish();
                 _cache.put(_url, _holder);
+                if (_priority == PriorityLow)
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
             }
             Log.i(TAG, "finished loading task on " + _url);
         }
@@ -110,12 +213,16 @@ public final class ImageLoader {
 
         void finish();
         void notify(ImageLoadedCallback callback);
+
+        void markPreload();
+        boolean claimPreload(); //true for the first load() of preloaded image
     }
 
     private abstract static class BaseImageHolder implements ImageHolder
     {
         protected final URL                 _url;
         private boolean                     _finished;
+        private boolean                     _preloaded;
         private List<ImageLoadedCallback>   _callbacks;
 
         BaseImageHolder(URL url) {
@@ -126,6 +233,16 @@ public final class ImageLoader {
         @Override
         public URL getUrl() { return _url; }
 
+        @Override
+        public synchronized void markPreload() { _preloaded = true; }
+
+        @Override
+        public synchronized boolean claimPreload() {
+            boolean preloaded = _preloaded;
+            _preloaded = false;
+            return preloaded;
+        }
+
         @Override
         public void notify(ImageLoadedCallback callback) {
             boolean finished;
@@ -54,9 +54,7 @@ public final class MainActivity
             _executionEnvironment = ((ExecutionEnvironment.LocalBinder) service).getService();
             _executionEnvironment.acquireResource();
             synchronized (MainActivity.this) {
-                ViewGroup rootView = findViewById(android.R.id.content);
-                rootView = (ViewGroup)rootView.getChildAt(0);
-                _executionEnvironment.setRootView(rootView);
+                _executionEnvironment.setRootView(getContentRoot());
                 _executionEnvironment.setSurfaceHolder(_mainView.getHolder());
 
                 if (_surfaceFrame != null)
@@ -200,7 +198,7 @@ public final class MainActivity
             Log.i(TAG, "surface destroyed");
             synchronized (MainActivity.this) {
                 if (_executionEnvironment != null)
-                    _executionEnvironment.setRenderer(null);
+                    _executionEnvironment.releaseRenderer(_uiRenderer);
                 _surfaceFrame = null;
             }
         }
@@ -342,6 +340,11 @@ public final class MainActivity
             super.onBackPressed();
     }
 
+    private ViewGroup getContentRoot() {
+        ViewGroup content = findViewById(android.R.id.content);
+        return (ViewGroup)content.getChildAt(0);
+    }
+
     @Override
     protected void onStop() {
         super.onStop();
@@ -360,6 +363,10 @@ public final class MainActivity
 
     @Override
     protected void onDestroy() {
+        synchronized (this) {
+            if (_executionEnvironment != null) //warm runtime outlives this activity, drop references to it
+                _executionEnvironment.detachActivity(getContentRoot(), _mainView != null? _mainView.getHolder(): null, _uiRenderer);
+        }
         if (_executionEnvironmentBound)
             unbindService(_executionEnvironmentConnection);
         _mainView = null;
@@ -0,0 +1,121 @@
+package com.pureqml.android;
+
+import com.pureqml.android.runtime.BaseObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//native peers indexed by handle: slot index in lower bits, slot generation in upper bits
+//freed slots are reused with bumped generation, so stale handles resolve to null, js thread only
+final class ObjectTable {
+    static final int        IndexBits       = 20;
+    static final int        IndexMask       = (1 << IndexBits) - 1;
+    static final int        GenerationMask  = (1 << (31 - IndexBits)) - 1; //handles are always positive
+    static final int        InitialCapacity = 1024;
+    static final int        Allocated       = -2; //_nextFree value of used slot, -1 ends free list
+
+    private BaseObject[]    _objects        = new BaseObject[InitialCapacity];
+    private int[]           _generations    = new int[InitialCapacity];
+    private int[]           _nextFree       = new int[InitialCapacity];
+    private int             _freeHead       = -1;
+    private int             _size;          //slots ever used
+    private int             _count;         //allocated handles
+
+    private static int index(int handle) {
+        return handle & IndexMask;
+    }
+
+    private static int generation(int handle) {
+        return handle >>> IndexBits;
+    }
+
+    private static int nextGeneration(int generation) {
+        generation = (generation + 1) & GenerationMask;
+        return generation != 0? generation: 1;
+    }
+
+    private void grow() {
+        int capacity = _objects.length * 2;
+        if (capacity > IndexMask + 1)
+            throw new RuntimeException("object table is full, " + _count + " objects allocated");
+        _objects = Arrays.copyOf(_objects, capacity);
+        _generations = Arrays.copyOf(_generations, capacity);
+        _nextFree = Arrays.copyOf(_nextFree, capacity);
+    }
+
+    //reserves a slot, object is set with put()
+    int allocate() {
+        int index;
+        if (_freeHead >= 0) {
+            index = _freeHead;
+            _freeHead = _nextFree[index];
+        } else {
+            if (_size == _objects.length)
+                grow();
+            index = _size++;
+            _generations[index] = 1; //generation 0 is never used, so handle is never 0
+        }
+        _nextFree[index] = Allocated;
+        ++_count;
+        return (_generations[index] << IndexBits) | index;
+    }
+
+    private boolean valid(int handle) {
+        int index = index(handle);
+        return index < _size && _nextFree[index] == Allocated && _generations[index] == generation(handle);
+    }
+
+    BaseObject get(int handle) {
+        int index = index(handle);
+        return index < _size && _generations[index] == generation(handle)? _objects[index]: null;
+    }
+
+    void put(int handle, BaseObject object) {
+        if (!valid(handle))
+            throw new RuntimeException("putObject: invalid or stale object handle " + handle);
+        _objects[index(handle)] = object;
+    }
+
+    void remove(int handle) {
+        if (!valid(handle))
+            return;
+        int index = index(handle);
+        _objects[index] = null;
+        _generations[index] = nextGeneration(_generations[index]);
+        _nextFree[index] = _freeHead;
+        _freeHead = index;
+        --_count;
+    }
+
+    int size() {
+        return _count;
+    }
+
+    int capacity() {
+        return _objects.length;
+    }
+
+    List<BaseObject> values() {
+        ArrayList<BaseObject> values = new ArrayList<>(_count);
+        for(int i = 0; i < _size; ++i) {
+            BaseObject object = _objects[i];
+            if (object != null)
+                values.add(object);
+        }
+        return values;
+    }
+
+    //every used slot goes to free list with bumped generation, so handles issued before clear() stay stale
+    void clear() {
+        Arrays.fill(_objects, 0, _size, null);
+        _freeHead = -1;
+        for(int i = _size - 1; i >= 0; --i) {
+            if (_nextFree[i] == Allocated)
+                _generations[i] = nextGeneration(_generations[i]);
+            _nextFree[i] = _freeHead;
+            _freeHead = i;
+        }
+        _count = 0;
+    }
+}
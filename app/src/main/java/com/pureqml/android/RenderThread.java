@@ -0,0 +1,187 @@
+package com.pureqml.android;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import com.pureqml.android.runtime.LayerManager;
+
+import java.util.ArrayList;
+
+//rasterizes frames recorded on js thread, at most one frame in flight
+final class RenderThread {
+    private static final String TAG = "RenderThread";
+
+    interface Listener {
+        //called on render thread, fullRedraw is true when surface lost its content
+        void onFramePresented(boolean fullRedraw);
+    }
+
+    //immutable after submit(): recorded scene, regions it covers and bitmaps to rasterize before drawing it
+    static final class Frame {
+        final Picture       picture = new Picture();
+        final DirtyRegion   region  = new DirtyRegion();
+        final ArrayList<LayerManager.Raster> rasters = new ArrayList<>();
+        SurfaceHolder       holder;
+        Runnable            task;
+
+        Canvas beginRecording(SurfaceHolder holder, DirtyRegion dirty) {
+            this.holder = holder;
+            region.set(dirty);
+            Rect bounds = region.getBounds();
+            return picture.beginRecording(bounds.right, bounds.bottom);
+        }
+
+        void endRecording() {
+            picture.endRecording();
+        }
+    }
+
+    private final Listener          _listener;
+    private HandlerThread           _thread;
+    private Handler                 _handler;
+    private final Frame[]           _frames = new Frame[2];
+    private int                     _nextFrame;
+    private boolean                 _inFlight;  //guarded by this
+    private final Paint             _clearPaint = new Paint();
+    private final Paint             _copyPaint = new Paint();
+    private final Rect              _lockRect = new Rect();
+    private Bitmap                  _backing;       //whole scene, surface may widen lock rect to anything
+    private Canvas                  _backingCanvas;
+    private boolean                 _backingValid;  //false until a frame repaints whole backing
+
+    RenderThread(Listener listener) {
+        _listener = listener;
+        _clearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+        _copyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        for(int i = 0; i < _frames.length; ++i) {
+            final Frame frame = new Frame();
+            frame.task = new SafeRunnable() {
+                @Override
+                public void doRun() {
+                    boolean fullRedraw = false;
+                    try {
+                        fullRedraw = render(frame);
+                    } finally {
+                        synchronized (RenderThread.this) {
+                            _inFlight = false;
+                        }
+                        _listener.onFramePresented(fullRedraw);
+                    }
+                }
+            };
+            _frames[i] = frame;
+        }
+
+        _thread = new HandlerThread("RenderThread", Process.THREAD_PRIORITY_DISPLAY);
+        _thread.start();
+        _handler = new Handler(_thread.getLooper());
+    }
+
+    synchronized boolean isBusy() {
+        return _inFlight || _handler == null;
+    }
+
+    //returns frame for recording, only valid if !isBusy()
+    Frame obtainFrame() {
+        Frame frame = _frames[_nextFrame];
+        _nextFrame = (_nextFrame + 1) % _frames.length;
+        return frame;
+    }
+
+    void submit(final Frame frame) {
+        Handler handler;
+        synchronized (this) {
+            handler = _handler;
+            if (handler == null)
+                return;
+            _inFlight = true;
+        }
+        handler.post(frame.task);
+    }
+
+    //layer and tile bitmaps are drawn before anything blits them
+    private static void drawRasters(ArrayList<LayerManager.Raster> rasters) {
+        try {
+            for(int i = 0, n = rasters.size(); i < n; ++i)
+                rasters.get(i).draw();
+        } finally {
+            rasters.clear();
+        }
+    }
+
+    //replays frame into surface-sized backing bitmap, returns true if backing has no content outside of frame region yet
+    private boolean updateBacking(Rect surface, Frame frame) {
+        int width = surface.width(), height = surface.height();
+        if (width <= 0 || height <= 0)
+            return false;
+        if (_backing == null || _backing.getWidth() != width || _backing.getHeight() != height) {
+            Log.d(TAG, "allocating " + width + "x" + height + " backing bitmap");
+            _backing = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            _backingCanvas = new Canvas(_backing);
+            _backingValid = false;
+        }
+        DirtyRegion region = frame.region;
+        for(int i = 0, n = region.size(); i < n; ++i) {
+            Rect rect = region.get(i);
+            _backingCanvas.drawRect(rect, _clearPaint);
+            if (!_backingValid && rect.contains(0, 0, width, height))
+                _backingValid = true;
+        }
+        _backingCanvas.drawPicture(frame.picture);
+        return !_backingValid;
+    }
+
+    private boolean render(Frame frame) {
+        SurfaceHolder holder = frame.holder;
+        frame.holder = null;
+        drawRasters(frame.rasters); //js thread considers them rendered, even if frame is not posted
+        if (holder == null || holder.getSurface() == null)
+            return false;
+
+        DirtyRegion region = frame.region;
+        boolean fullRedraw = updateBacking(holder.getSurfaceFrame(), frame);
+        if (_backing == null)
+            return fullRedraw;
+
+        Rect lockRect = _lockRect;
+        lockRect.set(region.getBounds());
+        Canvas canvas = null;
+        try {
+            canvas = holder.lockCanvas(lockRect);
+            if (canvas == null)
+                return false;
+
+            //surface may extend dirty rect, back buffer content there is stale, so the whole lock rect comes from backing
+            if (!lockRect.equals(region.getBounds()) && Log.isLoggable(TAG, Log.DEBUG))
+                Log.d(TAG, "surface requested " + lockRect + " instead of " + region.getBounds());
+            canvas.drawBitmap(_backing, lockRect, lockRect, _copyPaint);
+        } catch (Exception e) {
+            Log.e(TAG, "render failed", e);
+        } finally {
+            if (canvas != null)
+                holder.unlockCanvasAndPost(canvas);
+        }
+        return fullRedraw;
+    }
+
+    void discard() {
+        HandlerThread thread;
+        synchronized (this) {
+            thread = _thread;
+            _thread = null;
+            _handler = null;
+        }
+        if (thread != null)
+            thread.quit();
+    }
+}
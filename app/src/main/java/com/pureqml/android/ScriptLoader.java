@@ -0,0 +1,133 @@
+package com.pureqml.android;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import com.eclipsesource.v8.V8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+//loads javascript sources from assets for main runtime and workers
+//uncompressed assets (noCompress 'js') are memory mapped and decoded straight into strings passed to v8
+//bundle could be split by "//@chunk" lines between top-level statements, chunks are evaluated one by one,
+//so only one chunk is decoded at a time
+public final class ScriptLoader {
+    private static final String TAG = "ScriptLoader";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] ChunkMarker = "//@chunk\n".getBytes(UTF8);
+
+    private ScriptLoader() {}
+
+    static byte[] readScript(InputStream input) throws IOException {
+        final int BufferSize = 128 * 1024;
+
+        final byte[] buffer = new byte[BufferSize];
+        final ByteArrayOutputStream scriptStream = new ByteArrayOutputStream(Math.max(input.available(), BufferSize));
+        int r;
+        while ((r = input.read(buffer)) != -1)
+            scriptStream.write(buffer, 0, r);
+        Log.v(TAG, "read " + scriptStream.size() + " bytes...");
+        return scriptStream.toByteArray();
+    }
+
+    //maps uncompressed asset, returns null if asset is compressed in apk
+    static ByteBuffer map(AssetManager assets, String name) throws IOException {
+        AssetFileDescriptor fd;
+        try {
+            fd = assets.openFd(name);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            FileInputStream stream = fd.createInputStream();
+            try {
+                //mapping stays valid after channel is closed
+                return stream.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+            } finally {
+                stream.close();
+            }
+        } finally {
+            fd.close();
+        }
+    }
+
+    static ByteBuffer read(AssetManager assets, String name) throws IOException {
+        ByteBuffer data = map(assets, name);
+        if (data != null) {
+            Log.v(TAG, "mapped " + name + ", " + data.capacity() + " bytes");
+            return data;
+        }
+        Log.w(TAG, name + " is compressed, reading it through stream");
+        InputStream input = assets.open(name);
+        try {
+            return ByteBuffer.wrap(readScript(input));
+        } finally {
+            input.close();
+        }
+    }
+
+    static String decode(ByteBuffer data) throws CharacterCodingException {
+        return UTF8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .decode(data).toString();
+    }
+
+    public static String load(AssetManager assets, String name) throws IOException {
+        return decode(read(assets, name));
+    }
+
+    private static boolean isChunkMarker(ByteBuffer data, int pos, int end) {
+        if (end - pos < ChunkMarker.length)
+            return false;
+        for(int i = 0; i < ChunkMarker.length; ++i)
+            if (data.get(pos + i) != ChunkMarker[i])
+                return false;
+        return true;
+    }
+
+    //evaluates asset chunk by chunk keeping line numbers, returns number of chunks
+    public static int execute(V8 v8, AssetManager assets, String name) throws IOException {
+        return execute(v8, read(assets, name), name);
+    }
+
+    static int execute(V8 v8, ByteBuffer data, String name) throws IOException {
+        int end = data.limit();
+        int start = data.position();
+        int line = 0, lines = 0, chunks = 0;
+        for(int pos = start; pos <= end; ++pos) {
+            boolean last = pos == end;
+            if (!last && (data.get(pos) != '\n' || !isChunkMarker(data, pos + 1, end)))
+                continue;
+
+            int chunkEnd = last? end: pos + 1;
+            if (chunkEnd > start) {
+                ByteBuffer chunk = data.duplicate();
+                chunk.limit(chunkEnd);
+                chunk.position(start);
+                String source = decode(chunk);
+                v8.executeVoidScript(source, name, line);
+                ++chunks;
+                for(int i = 0; i < source.length(); ++i)
+                    if (source.charAt(i) == '\n')
+                        ++lines;
+            }
+            if (last)
+                break;
+            line = ++lines; //marker line
+            start = pos + 1 + ChunkMarker.length;
+            pos = start - 1;
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,87 @@
+package com.pureqml.android;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.eclipsesource.v8.V8;
+import com.eclipsesource.v8.V8Object;
+
+import java.util.Locale;
+
+//monotonic timestamps of cold start phases, milliseconds since environment creation
+//logged as one line when the first frame is presented, startup-timeline.py collects it across runs
+final class StartupTimeline {
+    static final String TAG = "StartupTimeline";
+
+    static final int    Created             = 0;
+    static final int    RuntimeCreated      = 1;
+    static final int    RuntimeRegistered   = 2;
+    static final int    ScriptRead          = 3;
+    static final int    ScriptExecuted      = 4;
+    static final int    Run                 = 5;
+    static final int    SurfaceGeometry     = 6;
+    static final int    FirstPaint          = 7;
+    static final int    FirstFrame          = 8;
+
+    static final String[] Names = {
+        "created", "runtimeCreated", "runtimeRegistered", "scriptRead", "scriptExecuted",
+        "run", "surfaceGeometry", "firstPaint", "firstFrame"
+    };
+
+    private final long      _origin = System.nanoTime();
+    private final long      _processStart; //ms before origin, -1 if unknown
+    private final long[]    _marks = new long[Names.length];
+
+    StartupTimeline() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            _processStart = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        else
+            _processStart = -1;
+    }
+
+    //first mark of each phase wins, any thread
+    void mark(int phase) {
+        boolean done;
+        synchronized (this) {
+            if (_marks[phase] != 0)
+                return;
+            _marks[phase] = System.nanoTime();
+            done = phase == FirstFrame;
+        }
+        if (done)
+            log();
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1e5) / 10.0;
+    }
+
+    synchronized String summary() {
+        StringBuilder b = new StringBuilder("timeline");
+        if (_processStart >= 0)
+            b.append(" processStart=").append(-_processStart);
+        for(int i = 0; i < _marks.length; ++i) {
+            if (_marks[i] != 0)
+                b.append(' ').append(Names[i]).append('=').append(String.format(Locale.US, "%.1f", toMillis(_marks[i] - _origin)));
+        }
+        return b.toString();
+    }
+
+    void log() {
+        Log.i(TAG, summary());
+    }
+
+    //js thread
+    synchronized V8Object toObject(V8 v8) {
+        V8Object result = new V8Object(v8);
+        if (_processStart >= 0)
+            result.add("processStart", (double)-_processStart);
+        for(int i = 0; i < _marks.length; ++i) {
+            if (_marks[i] != 0)
+                result.add(Names[i], toMillis(_marks[i] - _origin));
+        }
+        return result;
+    }
+}
@@ -13,18 +13,38 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 final class Wrapper {
     public static final String TAG = "ClassWrapper";
-    private static final String UNIQUE_ID_KEY = "__uniqueId";
+    static final String UNIQUE_ID_KEY = "__uniqueId";
+
+    //per process, survives environment restarts; null values mark classes without generated dispatcher
+    private static final Map<Class<?>, IDispatcher>    Dispatchers = new HashMap<>();
+    private static final Map<Class<?>, Method[]>       ExportedMethods = new HashMap<>();
 
     public static final class MethodWrapper implements JavaCallback {
         final IExecutionEnvironment _env;
         private final Method _method;
-        public MethodWrapper(IExecutionEnvironment env, Method method) { _env = env; _method = method; }
+        private final String _name;
+
+        public MethodWrapper(IExecutionEnvironment env, Method method) { _env = env; _method = method; _name = getScopeName(method); }
 
         @Override
         public Object invoke(V8Object self, V8Array arguments) {
+            HandleTracker tracker = _env.getHandleTracker();
+            tracker.enter(_name);
+            try {
+                return invokeMethod(self, arguments);
+            } finally {
+                tracker.exit();
+            }
+        }
+
+        private Object invokeMethod(V8Object self, V8Array arguments) {
             BaseObject element = _env.getObjectById(self.getInteger(UNIQUE_ID_KEY));
             int n = arguments.length();
             Class<?>[] argsType = _method.getParameterTypes();
@@ -47,13 +67,16 @@ final class Wrapper {
     public static final class SimpleMethodWrapper implements JavaCallback {
         final IExecutionEnvironment _env;
         private final Method _method;
+        private final String _name;
 
-        public SimpleMethodWrapper(IExecutionEnvironment env, Method method) { _env = env; _method = method; }
+        public SimpleMethodWrapper(IExecutionEnvironment env, Method method) { _env = env; _method = method; _name = getScopeName(method); }
 
         @Override
         public Object invoke(V8Object self, V8Array arguments) {
             int id = self.getInteger(UNIQUE_ID_KEY);
             BaseObject object = _env.getObjectById(id);
+            HandleTracker tracker = _env.getHandleTracker();
+            tracker.enter(_name);
             try {
                 return _method.invoke(object, arguments);
             } catch (IllegalAccessException e) {
@@ -62,22 +85,107 @@ final class Wrapper {
             } catch (InvocationTargetException e) {
                 Log.e(TAG, "SimpleMethodWrapper: InvocationTargetException", e);
                 throw new RuntimeException("invoke failed: " + e.getTargetException().toString());
+            } finally {
+                tracker.exit();
             }
         }
     }
 
-    public static void generatePrototype(IExecutionEnvironment env, V8 v8, V8Object prototype, Class<?> cls) {
-        Log.i(TAG, "wrapping class " + cls.getName());
+    //calls generated dispatcher, no reflection or argument array allocation
+    public static final class DispatchWrapper implements JavaCallback {
+        final IExecutionEnvironment _env;
+        private final IDispatcher _dispatcher;
+        private final int _method;
+        private final String _name;
 
+        public DispatchWrapper(IExecutionEnvironment env, IDispatcher dispatcher, int method, String name) { _env = env; _dispatcher = dispatcher; _method = method; _name = name; }
+
+        @Override
+        public Object invoke(V8Object self, V8Array arguments) {
+            BaseObject object = _env.getObjectById(self.getInteger(UNIQUE_ID_KEY));
+            HandleTracker tracker = _env.getHandleTracker();
+            tracker.enter(_name);
+            try {
+                return _dispatcher.invoke(_env, _method, object, arguments);
+            } finally {
+                tracker.exit();
+            }
+        }
+    }
+
+    static String getScopeName(Method method) {
+        return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
+
+    //returns dispatcher generated for class or null if it's not annotated with @GenerateDispatcher
+    static IDispatcher findDispatcher(Class<?> cls) {
+        synchronized (Dispatchers) {
+            if (Dispatchers.containsKey(cls))
+                return Dispatchers.get(cls);
+        }
+        IDispatcher dispatcher;
+        try {
+            dispatcher = (IDispatcher)Class.forName(cls.getName() + "Dispatcher").newInstance();
+        } catch (ClassNotFoundException e) {
+            dispatcher = null;
+        } catch (Exception e) {
+            Log.w(TAG, "failed to instantiate dispatcher for " + cls.getName(), e);
+            dispatcher = null;
+        }
+        synchronized (Dispatchers) {
+            Dispatchers.put(cls, dispatcher);
+        }
+        return dispatcher;
+    }
+
+    //public methods declared in class, reflection fallback for classes without dispatcher
+    static Method[] getExportedMethods(Class<?> cls) {
+        synchronized (ExportedMethods) {
+            Method[] methods = ExportedMethods.get(cls);
+            if (methods != null)
+                return methods;
+        }
+        List<Method> exported = new ArrayList<>();
         for(Method method : cls.getMethods()) {
-            String name = method.getName();
             int mods = method.getModifiers();
             //for some reasons android always return public (1) here :\
             if (!method.getDeclaringClass().equals(cls) || Modifier.isPrivate(mods) || Modifier.isProtected(mods) || method.isSynthetic())
                 continue;
+            exported.add(method);
+        }
+        Method[] methods = exported.toArray(new Method[0]);
+        synchronized (ExportedMethods) {
+            ExportedMethods.put(cls, methods);
+        }
+        return methods;
+    }
 
+    static int findMethod(IDispatcher dispatcher, String name) {
+        String[] names = dispatcher.getMethodNames();
+        for(int i = 0; i < names.length; ++i)
+            if (names[i].equals(name))
+                return i;
+        return -1;
+    }
+
+    public static void generatePrototype(IExecutionEnvironment env, V8 v8, V8Object prototype, Class<?> cls) {
+        IDispatcher dispatcher = findDispatcher(cls);
+        if (dispatcher != null) {
+            Log.d(TAG, "wrapping class " + cls.getName() + " with generated dispatcher");
+            String[] names = dispatcher.getMethodNames();
+            for(int i = 0; i < names.length; ++i)
+                prototype.registerJavaMethod(new DispatchWrapper(env, dispatcher, i, cls.getSimpleName() + "." + names[i]), names[i]);
+            return;
+        }
+
+        Log.d(TAG, "wrapping class " + cls.getName());
+
+        boolean verbose = Log.isLoggable(TAG, Log.VERBOSE);
+        for(Method method : getExportedMethods(cls)) {
+            String name = method.getName();
             Class<?>[] argTypes = method.getParameterTypes();
-            Log.i(TAG, "wrapping method " + name + " with " + argTypes.length + " args");
+            if (verbose)
+                Log.v(TAG, "wrapping method " + name + " with " + argTypes.length + " args");
             if (argTypes.length == 1 && argTypes[0].equals(V8Array.class)) {
                 prototype.registerJavaMethod(new SimpleMethodWrapper(env, method), name);
             } else
@@ -85,17 +193,65 @@ final class Wrapper {
         }
     }
 
+    //class registered with constructor only, prototype methods are registered on the first instantiation
+    //of the class or any of its subclasses
+    static final class LazyClass {
+        final IExecutionEnvironment _env;
+        final Class<?>              _cls;
+        final LazyClass             _parent;
+        private V8Object            _prototype; //held until materialized
+
+        LazyClass(IExecutionEnvironment env, Class<?> cls, LazyClass parent) {
+            _env = env;
+            _cls = cls;
+            _parent = parent;
+        }
+
+        boolean isMaterialized() {
+            return _prototype == null;
+        }
+
+        void materialize() {
+            if (_prototype == null)
+                return;
+            if (_parent != null)
+                _parent.materialize();
+            generatePrototype(_env, _env.getRuntime(), _prototype, _cls);
+            release();
+        }
+
+        void release() {
+            if (_prototype != null) {
+                _prototype.close();
+                _prototype = null;
+            }
+        }
+    }
+
     private static final class ConstructorWrapper implements JavaVoidCallback {
         final IExecutionEnvironment   _env;
         final Constructor<?>          _ctor;
+        final LazyClass               _class;
 
-        public ConstructorWrapper(IExecutionEnvironment env, Constructor<?> ctor) {
+        public ConstructorWrapper(IExecutionEnvironment env, Constructor<?> ctor, LazyClass cls) {
             _env = env;
             _ctor = ctor;
+            _class = cls;
         }
 
         @Override
         public void invoke(V8Object self, V8Array arguments) {
+            _class.materialize();
+            HandleTracker tracker = _env.getHandleTracker();
+            tracker.enter(_ctor.getDeclaringClass().getSimpleName());
+            try {
+                construct(self, arguments);
+            } finally {
+                tracker.exit();
+            }
+        }
+
+        private void construct(V8Object self, V8Array arguments) {
             Class<?>[] ctorArgs = _ctor.getParameterTypes();
             int n = ctorArgs.length;
             Object[] args = new Object[n];
@@ -119,24 +275,25 @@ final class Wrapper {
         }
     }
 
-    public static V8Object generateClass(IExecutionEnvironment env, V8 v8, V8Object namespace, String className, Class<?> cls, Class<?>[] ctorArgs) {
+    //registers constructor and links prototype to parent class, methods are added by LazyClass.materialize
+    public static LazyClass generateLazyClass(IExecutionEnvironment env, V8Object namespace, String className, Class<?> cls, Class<?>[] ctorArgs, LazyClass parent) {
+        if (parent != null && parent.isMaterialized())
+            throw new IllegalStateException("parent of " + className + " is already materialized");
+        Constructor<?> ctor;
         try {
-            Constructor<?> ctor = cls.getConstructor(ctorArgs);
-            Log.i(TAG, "wrapping ctor of " + cls.getName());
-            namespace.registerJavaMethod(new ConstructorWrapper(env, ctor), className);
-
-            V8Object function = namespace.getObject(className);
-            V8Object prototype = function.getObject("prototype");
-
-            generatePrototype(env, v8, prototype, cls);
-
-            function.close();
-
-            return prototype;
+            ctor = cls.getConstructor(ctorArgs);
         } catch (NoSuchMethodException e) {
-            e.printStackTrace();
+            throw new IllegalArgumentException("no suitable constructor in " + cls.getName(), e);
         }
-        return null;
+        LazyClass lazyClass = new LazyClass(env, cls, parent);
+        namespace.registerJavaMethod(new ConstructorWrapper(env, ctor, lazyClass), className);
+
+        V8Object function = namespace.getObject(className);
+        lazyClass._prototype = function.getObject("prototype");
+        function.close();
+        if (parent != null)
+            lazyClass._prototype.setPrototype(parent._prototype);
+        return lazyClass;
     }
 
     public static int getObjectId(V8Object obj) {
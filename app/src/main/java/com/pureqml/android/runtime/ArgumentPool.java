@@ -0,0 +1,74 @@
+package com.pureqml.android.runtime;
+
+import com.eclipsesource.v8.V8;
+import com.eclipsesource.v8.V8Array;
+import com.eclipsesource.v8.V8Value;
+
+//reusable argument arrays for native to js calls, one per arity
+//call() spreads array into arguments, so js never sees the array itself and it could be reused after the call
+//nested calls of the same arity get a fresh array, js thread only
+public final class ArgumentPool {
+    static final int                MaxArity = 4;
+    static final String[]           Index = { "0", "1", "2", "3" };
+
+    private final V8Array[]         _arrays = new V8Array[MaxArity + 1];
+    private final boolean[]         _busy = new boolean[MaxArity + 1];
+
+    //array of given arity, elements are set with add(Index[i], value)
+    V8Array obtain(V8 v8, int arity) {
+        V8Array array;
+        if (arity > MaxArity || _busy[arity]) {
+            array = new V8Array(v8);
+            for(int i = 0; i < arity; ++i)
+                array.pushUndefined();
+            return array;
+        }
+        array = _arrays[arity];
+        if (array == null || array.isReleased()) {
+            array = new V8Array(v8);
+            for(int i = 0; i < arity; ++i)
+                array.pushUndefined();
+            _arrays[arity] = array;
+        }
+        _busy[arity] = true;
+        return array;
+    }
+
+    //pooled array drops its arguments, payloads passed to js must not stay reachable until the next call
+    void recycle(V8Array array, int arity) {
+        if (arity <= MaxArity && _arrays[arity] == array) {
+            for(int i = 0; i < arity; ++i)
+                array.addUndefined(Index[i]);
+            _busy[arity] = false;
+        } else
+            array.close();
+    }
+
+    static void set(V8Array array, int index, Object value) {
+        String key = index < Index.length? Index[index]: Integer.toString(index);
+        if (value == null)
+            array.addNull(key);
+        else if (value instanceof Integer)
+            array.add(key, (Integer)value);
+        else if (value instanceof Double || value instanceof Float || value instanceof Long)
+            array.add(key, ((Number)value).doubleValue());
+        else if (value instanceof Boolean)
+            array.add(key, (Boolean)value);
+        else if (value instanceof String)
+            array.add(key, (String)value);
+        else if (value instanceof V8Value)
+            array.add(key, (V8Value)value);
+        else
+            throw new IllegalArgumentException("unsupported argument type " + value.getClass());
+    }
+
+    public void clear() {
+        for(int i = 0; i <= MaxArity; ++i) {
+            if (_arrays[i] != null) {
+                _arrays[i].close();
+                _arrays[i] = null;
+            }
+            _busy[i] = false;
+        }
+    }
+}
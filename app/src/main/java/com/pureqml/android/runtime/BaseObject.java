@@ -6,34 +6,52 @@ import com.eclipsesource.v8.Releasable;
 import com.eclipsesource.v8.V8Array;
 import com.eclipsesource.v8.V8Function;
 import com.eclipsesource.v8.V8Object;
+import com.eclipsesource.v8.V8Value;
+import com.pureqml.android.GenerateDispatcher;
 import com.pureqml.android.IExecutionEnvironment;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
+@GenerateDispatcher
 public class BaseObject {
     private static final String TAG = "object";
 
+    private static final Map<String, Long>  EventBits = new HashMap<>();
+    private static final long               OverflowBit = 1L << 63; //shared by event types registered after first 63
+
     protected final IExecutionEnvironment         _env;
     private final int                             _objectId;
-    private Map<String, List<V8Function>>   _callbacks;
+    private Map<String, V8Function[]>             _callbacks; //copy on write, emit iterates snapshot
+    private long                                  _eventMask;
 
     public BaseObject(IExecutionEnvironment env) {
         _env = env;
         _objectId = _env.nextObjectId();
     }
 
+    //bit of event type for hasCallbackFor(long), assigned on first use
+    static synchronized long getEventBit(String name) {
+        Long bit = EventBits.get(name);
+        if (bit == null) {
+            int n = EventBits.size();
+            bit = n < 63? 1L << n: OverflowBit;
+            EventBits.put(name, bit);
+        }
+        return bit;
+    }
+
     public int getObjectId() { return _objectId; }
 
     public void discard() {
         if (_callbacks != null) {
-            for(List<V8Function> callbacks: _callbacks.values()) {
+            for(V8Function[] callbacks: _callbacks.values()) {
                 for(V8Function callback : callbacks)
                     callback.close();
             }
             _callbacks = null;
+            _eventMask = 0;
         }
         _env.removeObject(this.getObjectId());
     }
@@ -42,80 +60,170 @@ public class BaseObject {
         //Log.d(TAG, "on " + name);
         if (_callbacks == null)
             _callbacks = new HashMap<>();
-        List<V8Function> callbacks = _callbacks.get(name);
+        V8Function[] callbacks = _callbacks.get(name);
         if (callbacks == null) {
-            callbacks = new LinkedList<>();
-            _callbacks.put(name, callbacks);
+            callbacks = new V8Function[] { callback };
+        } else {
+            callbacks = Arrays.copyOf(callbacks, callbacks.length + 1);
+            callbacks[callbacks.length - 1] = callback;
         }
-        callbacks.add(callback);
+        _callbacks.put(name, callbacks);
+        _eventMask |= getEventBit(name);
     }
 
     protected boolean hasCallbackFor(String name) {
         return _callbacks != null && _callbacks.get(name) != null;
     }
 
+    //true if there are listeners for any of event types in mask, see getEventBit
+    protected final boolean hasCallbackFor(long mask) {
+        return (_eventMask & mask) != 0;
+    }
+
     public boolean removeListener(String name, V8Function callback) {
-        if (_callbacks == null)
-            return false;
+        V8Function[] callbacks = _callbacks != null? _callbacks.get(name): null;
+        boolean removed = false;
+        if (callbacks != null) {
+            //stored handle is a different handle of the same function
+            for(int i = 0; i < callbacks.length; ++i) {
+                V8Function stored = callbacks[i];
+                if (!stored.equals(callback))
+                    continue;
+
+                if (callbacks.length > 1) {
+                    V8Function[] updated = new V8Function[callbacks.length - 1];
+                    System.arraycopy(callbacks, 0, updated, 0, i);
+                    System.arraycopy(callbacks, i + 1, updated, i, callbacks.length - i - 1);
+                    _callbacks.put(name, updated);
+                } else {
+                    _callbacks.remove(name);
+                    _eventMask = 0;
+                    for(String key : _callbacks.keySet())
+                        _eventMask |= getEventBit(key);
+                }
+                stored.close();
+                removed = true;
+                break;
+            }
+        }
+        callback.close();
+        return removed;
+    }
 
-        List<V8Function> callbacks = _callbacks.get(name);
-        if (callbacks == null)
-            return false;
+    private V8Function[] getCallbacks(String name) {
+        Map<String, V8Function[]> callbacks = _callbacks;
+        return callbacks != null? callbacks.get(name): null;
+    }
 
-        return callbacks.remove(callback);
+    private void callAll(V8Function[] callbacks, V8Object target, String name, V8Array args) {
+        for(V8Function callback : callbacks) {
+            try {
+                Object r = callback.call(target, args);
+                if (r instanceof Releasable)
+                    ((Releasable)r).release();
+            } catch (Exception e) {
+                Log.e(TAG, "callback for " + name + " failed", e);
+            }
+        }
+    }
+
+    private boolean callUntilTrue(V8Function[] callbacks, V8Object target, String name, V8Array args) {
+        for(V8Function callback : callbacks) {
+            try {
+                Object r = callback.call(target, args);
+                if (r instanceof Boolean) {
+                    if ((Boolean)r)
+                        return true;
+                } else if (r instanceof Releasable)
+                    ((Releasable)r).release();
+            } catch (Exception e) {
+                Log.e(TAG, "callback for " + name + " failed", e);
+            }
+        }
+        return false;
+    }
+
+    private V8Array obtainArguments(Object[] args) {
+        V8Array v8args = _env.getArgumentPool().obtain(_env.getRuntime(), args.length);
+        for(int i = 0; i < args.length; ++i)
+            ArgumentPool.set(v8args, i, args[i]);
+        return v8args;
     }
 
     public void emit(V8Object target, String name, Object ... args) {
-        Log.v(TAG, "emitting " + name);
-        if (_callbacks == null)
+        V8Function[] callbacks = getCallbacks(name);
+        if (callbacks == null)
             return;
+        if (Log.isLoggable(TAG, Log.VERBOSE))
+            Log.v(TAG, "emitting " + name);
+
+        ArgumentPool pool = _env.getArgumentPool();
+        V8Array v8args = obtainArguments(args);
+        try {
+            callAll(callbacks, target, name, v8args);
+        } finally {
+            pool.recycle(v8args, args.length);
+        }
+    }
 
-        List<V8Function> callbacks = _callbacks.get(name);
+    //typed versions of emit for the hot events, no varargs array or boxing
+    protected final void emit(V8Object target, String name) {
+        V8Function[] callbacks = getCallbacks(name);
         if (callbacks == null)
             return;
 
-        V8Array v8args = new V8Array(_env.getRuntime());
-        for (Object arg : args) {
-            v8args.push(arg);
+        ArgumentPool pool = _env.getArgumentPool();
+        V8Array v8args = pool.obtain(_env.getRuntime(), 0);
+        try {
+            callAll(callbacks, target, name, v8args);
+        } finally {
+            pool.recycle(v8args, 0);
         }
-        for(V8Function callback : callbacks) {
-            try {
-                Object r = callback.call(target, v8args);
-                if (r instanceof Releasable)
-                    ((Releasable)r).release();
-            } catch (Exception e) {
-                Log.e(TAG, "callback for " + name + " failed", e);
-            }
+    }
+
+    protected final void emit(V8Object target, String name, V8Value arg) {
+        V8Function[] callbacks = getCallbacks(name);
+        if (callbacks == null)
+            return;
+
+        ArgumentPool pool = _env.getArgumentPool();
+        V8Array v8args = pool.obtain(_env.getRuntime(), 1);
+        try {
+            v8args.add(ArgumentPool.Index[0], arg);
+            callAll(callbacks, target, name, v8args);
+        } finally {
+            pool.recycle(v8args, 1);
         }
-        v8args.close();
     }
 
     public boolean emitUntilTrue(V8Object target, String name, Object ... args) {
-        Log.i(TAG, "emitting " + name);
-        if (_callbacks == null)
+        V8Function[] callbacks = getCallbacks(name);
+        if (callbacks == null)
             return false;
+        if (Log.isLoggable(TAG, Log.VERBOSE))
+            Log.v(TAG, "emitting " + name);
+
+        ArgumentPool pool = _env.getArgumentPool();
+        V8Array v8args = obtainArguments(args);
+        try {
+            return callUntilTrue(callbacks, target, name, v8args);
+        } finally {
+            pool.recycle(v8args, args.length);
+        }
+    }
 
-        List<V8Function> callbacks = _callbacks.get(name);
+    protected final boolean emitUntilTrue(V8Object target, String name, String arg) {
+        V8Function[] callbacks = getCallbacks(name);
         if (callbacks == null)
             return false;
 
-        V8Array v8args = new V8Array(_env.getRuntime());
-        for (Object arg : args) {
-            v8args.push(arg);
-        }
-        boolean result = false;
-        for(V8Function callback : callbacks) {
-            try {
-                Boolean r = (Boolean)callback.call(target, v8args);
-                if (r.booleanValue()) {
-                    result = true;
-                    break;
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "callback for " + name + " failed", e);
-            }
+        ArgumentPool pool = _env.getArgumentPool();
+        V8Array v8args = pool.obtain(_env.getRuntime(), 1);
+        try {
+            v8args.add(ArgumentPool.Index[0], arg);
+            return callUntilTrue(callbacks, target, name, v8args);
+        } finally {
+            pool.recycle(v8args, 1);
         }
-        v8args.close();
-        return result;
     }
 }
@@ -0,0 +1,250 @@
+package com.pureqml.android.runtime;
+
+import android.util.Log;
+
+import com.eclipsesource.v8.V8Array;
+import com.eclipsesource.v8.V8ArrayBuffer;
+import com.eclipsesource.v8.V8TypedArray;
+import com.eclipsesource.v8.V8Value;
+import com.pureqml.android.IExecutionEnvironment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+//applies mutations batched by js in one crossing instead of one call per mutation
+//commands are int32 words in shared ArrayBuffer: opcode, element id, operands
+//string operands are indices into strings array passed along with the buffer, float operands are raw float32 bits
+public final class CommandBuffer {
+    private static final String TAG = "CommandBuffer";
+
+    public static final int OpAppend        = 1; //id, child id
+    public static final int OpPrepend       = 2; //id, child id
+    public static final int OpRemove        = 3; //id
+    public static final int OpDiscard       = 4; //id
+    public static final int OpStyle         = 5; //id, name string, value string
+    public static final int OpStyleInt      = 6; //id, name string, int value
+    public static final int OpStyleFloat    = 7; //id, name string, float bits
+    public static final int OpSetText       = 8; //id, text string
+    public static final int OpSetAttribute  = 9; //id, name string, value string
+    public static final int OpStyleId       = 10; //id, style id, value string
+    public static final int OpStyleIdInt    = 11; //id, style id, int value
+    public static final int OpStyleIdFloat  = 12; //id, style id, float bits
+    public static final int OpGeometry      = 13; //id, left, top, width, height
+
+    public static final int GeometryRecordSize = 5; //setGeometryBatch record: id, left, top, width, height
+
+    private static final String[] NoStrings = new String[0];
+
+    private final IExecutionEnvironment _env;
+    private long                        _flushes;
+    private long                        _commands;
+    private long                        _skipped;
+
+    public CommandBuffer(IExecutionEnvironment env) {
+        _env = env;
+    }
+
+    public long getFlushes()    { return _flushes; }
+    public long getCommands()   { return _commands; }
+    public long getSkipped()    { return _skipped; }
+
+    private static int getLength(int op) {
+        switch(op) {
+            case OpRemove:
+            case OpDiscard:
+                return 2;
+            case OpAppend:
+            case OpPrepend:
+            case OpSetText:
+                return 3;
+            case OpStyle:
+            case OpStyleInt:
+            case OpStyleFloat:
+            case OpSetAttribute:
+            case OpStyleId:
+            case OpStyleIdInt:
+            case OpStyleIdFloat:
+                return 4;
+            case OpGeometry:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    //ArrayBuffer or Int32Array, returned handle must be released
+    private static V8ArrayBuffer getBuffer(Object arg) {
+        if (arg instanceof V8TypedArray)
+            return ((V8TypedArray)arg).getBuffer();
+        else if (arg instanceof V8ArrayBuffer)
+            return ((V8ArrayBuffer)arg).twin();
+        else
+            throw new RuntimeException("ArrayBuffer or Int32Array expected, got " + arg);
+    }
+
+    //backing store is shared with js, words are read in place
+    //typed array may be a view into the middle of the buffer (subarray), only its own range is read
+    private static IntBuffer getWords(Object arg, V8ArrayBuffer buffer) {
+        ByteBuffer store = buffer.getBackingStore().duplicate();
+        if (arg instanceof V8TypedArray) {
+            V8TypedArray array = (V8TypedArray)arg;
+            if (array.getInteger("BYTES_PER_ELEMENT") != 4)
+                throw new RuntimeException("Int32Array expected, got " + arg);
+            int offset = array.getInteger("byteOffset");
+            store.limit(offset + array.getInteger("byteLength"));
+            store.position(offset);
+            store = store.slice();
+        }
+        return store.order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    //arguments: buffer, number of words used, optional strings array
+    public void flush(V8Array arguments) {
+        if (arguments.length() < 2)
+            throw new RuntimeException("flushCommands requires buffer and length");
+
+        Object arg0 = arguments.get(0);
+        Object strings = arguments.length() > 2? arguments.get(2): null;
+        V8ArrayBuffer buffer = null;
+        try {
+            buffer = getBuffer(arg0);
+            String[] table = NoStrings;
+            if (strings instanceof V8Array) {
+                V8Array array = (V8Array)strings;
+                table = array.getStrings(0, array.length()); //one crossing for all string operands
+            }
+            apply(getWords(arg0, buffer), arguments.getInteger(1), table);
+        } finally {
+            if (buffer != null)
+                buffer.release();
+            if (arg0 instanceof V8Value)
+                ((V8Value)arg0).release();
+            if (strings instanceof V8Value)
+                ((V8Value)strings).release();
+        }
+    }
+
+    //arguments: buffer of GeometryRecordSize records, optional number of records (whole buffer otherwise)
+    public void setGeometry(V8Array arguments) {
+        Object arg0 = arguments.get(0);
+        V8ArrayBuffer buffer = null;
+        try {
+            buffer = getBuffer(arg0);
+            IntBuffer words = getWords(arg0, buffer);
+            int n = arguments.length() > 1? arguments.getInteger(1): words.capacity() / GeometryRecordSize;
+            if (n * GeometryRecordSize > words.capacity())
+                throw new RuntimeException("geometry batch of " + n + " records exceeds buffer capacity " + words.capacity());
+
+            int applied = 0;
+            for(int i = 0, pos = 0; i < n; ++i, pos += GeometryRecordSize) {
+                Element el = getElement(words.get(pos));
+                if (el == null) {
+                    ++_skipped;
+                    continue;
+                }
+                el.setGeometry(words.get(pos + 1), words.get(pos + 2), words.get(pos + 3), words.get(pos + 4));
+                ++applied;
+            }
+            ++_flushes;
+            _commands += applied;
+        } finally {
+            if (buffer != null)
+                buffer.release();
+            if (arg0 instanceof V8Value)
+                ((V8Value)arg0).release();
+        }
+    }
+
+    private Element getElement(int id) {
+        BaseObject object = _env.getObjectById(id);
+        return object instanceof Element? (Element)object: null;
+    }
+
+    private static String getStyleName(int id) {
+        String name = StyleRegistry.getName(id);
+        if (name == null)
+            throw new RuntimeException("invalid style id " + id);
+        return name;
+    }
+
+    void apply(IntBuffer words, int length, String[] strings) {
+        if (length > words.capacity())
+            throw new RuntimeException("command length " + length + " exceeds buffer capacity " + words.capacity());
+
+        int pos = 0, applied = 0, stale = 0;
+        while(pos < length) {
+            int op = words.get(pos);
+            int n = getLength(op);
+            if (n == 0 || pos + n > length) //stream can't be resynchronized, drop the tail
+                throw new RuntimeException("malformed command " + op + " at " + pos + " of " + length);
+
+            Element el = getElement(words.get(pos + 1));
+            if (el == null) {
+                ++stale;
+                pos += n;
+                continue;
+            }
+
+            try {
+                switch(op) {
+                    case OpAppend:
+                        el.append(_env.getObjectById(words.get(pos + 2)));
+                        break;
+                    case OpPrepend:
+                        el.prepend(_env.getObjectById(words.get(pos + 2)));
+                        break;
+                    case OpRemove:
+                        el.remove();
+                        break;
+                    case OpDiscard:
+                        el.discard();
+                        break;
+                    case OpStyle:
+                        el.setStyleSafe(strings[words.get(pos + 2)], strings[words.get(pos + 3)]);
+                        break;
+                    case OpStyleInt:
+                        el.setStyleSafe(strings[words.get(pos + 2)], words.get(pos + 3));
+                        break;
+                    case OpStyleFloat:
+                        el.setStyleSafe(strings[words.get(pos + 2)], Float.intBitsToFloat(words.get(pos + 3)));
+                        break;
+                    case OpSetText:
+                        if (el instanceof Text)
+                            ((Text)el).setText(strings[words.get(pos + 2)]);
+                        else
+                            Log.w(TAG, "setText on non-text element " + el.getObjectId());
+                        break;
+                    case OpSetAttribute:
+                        el.setAttribute(strings[words.get(pos + 2)], strings[words.get(pos + 3)]);
+                        break;
+                    case OpStyleId:
+                        el.setStyleSafe(getStyleName(words.get(pos + 2)), strings[words.get(pos + 3)]);
+                        break;
+                    case OpStyleIdInt:
+                        el.setStyleSafe(getStyleName(words.get(pos + 2)), words.get(pos + 3));
+                        break;
+                    case OpStyleIdFloat:
+                        el.setStyleSafe(getStyleName(words.get(pos + 2)), Float.intBitsToFloat(words.get(pos + 3)));
+                        break;
+                    case OpGeometry:
+                        el.setGeometry(words.get(pos + 2), words.get(pos + 3), words.get(pos + 4), words.get(pos + 5));
+                        break;
+                }
+                ++applied;
+            } catch (Exception ex) {
+                //same as single calls: failed mutation is logged, the rest of the batch is applied
+                Log.e(TAG, "command " + op + " failed", ex);
+                ++_skipped;
+            }
+            pos += n;
+        }
+        ++_flushes;
+        _commands += applied;
+        _skipped += stale;
+        if (stale > 0)
+            Log.w(TAG, "skipped " + stale + " commands for stale elements");
+        if (Log.isLoggable(TAG, Log.VERBOSE))
+            Log.v(TAG, "applied " + applied + " commands, " + length + " words");
+    }
+}
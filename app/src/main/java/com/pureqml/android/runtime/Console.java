@@ -2,6 +2,7 @@ package com.pureqml.android.runtime;
 
 import android.util.Log;
 
+import com.eclipsesource.v8.JavaCallback;
 import com.eclipsesource.v8.JavaVoidCallback;
 import com.eclipsesource.v8.Releasable;
 import com.eclipsesource.v8.V8Array;
@@ -9,11 +10,23 @@ import com.eclipsesource.v8.V8Object;
 
 public final class Console {
     public static final String TAG = "js";
+    static final int MaxTagLength = 23; //Log.isLoggable throws on longer tags before api 24
 
+    //formats message on calling thread, output is done by LogSink thread
     public static class LogMethod implements JavaVoidCallback {
+        private final LogSink   _sink;
+        private final String    _tag;
+        private final int       _level;
+
+        public LogMethod(LogSink sink, String tag, int level) {
+            _sink = sink;
+            _tag = tag;
+            _level = level;
+        }
+
         @Override
         public void invoke(final V8Object receiver, final V8Array parameters) {
-            if (!Log.isLoggable(TAG, Log.INFO))
+            if (!_sink.isLoggable(_tag, _level))
                 return;
 
             StringBuilder b = new StringBuilder();
@@ -25,7 +38,33 @@ public final class Console {
                 if (value instanceof Releasable)
                     ((Releasable)value).release();
             }
-            Log.i(TAG, b.toString());
+            _sink.write(_level, _tag, b.toString());
         }
     }
+
+    public static void register(V8Object console, LogSink sink) {
+        register(console, sink, TAG);
+    }
+
+    //console.tag(name) returns console writing under its own tag, filtered by fd.setLogLevel(name, level)
+    static void register(V8Object console, final LogSink sink, String tag) {
+        console.registerJavaMethod(new LogMethod(sink, tag, Log.DEBUG), "debug");
+        console.registerJavaMethod(new LogMethod(sink, tag, Log.INFO), "log");
+        console.registerJavaMethod(new LogMethod(sink, tag, Log.INFO), "info");
+        console.registerJavaMethod(new LogMethod(sink, tag, Log.WARN), "warn");
+        console.registerJavaMethod(new LogMethod(sink, tag, Log.ERROR), "error");
+        console.registerJavaMethod(new JavaCallback() {
+            @Override
+            public Object invoke(V8Object receiver, V8Array parameters) {
+                if (parameters.length() < 1)
+                    throw new RuntimeException("console.tag requires tag name");
+                String name = parameters.getString(0);
+                if (name.isEmpty() || name.length() > MaxTagLength)
+                    throw new RuntimeException("invalid log tag '" + name + "', 1 to " + MaxTagLength + " characters expected");
+                V8Object tagged = new V8Object(receiver.getRuntime());
+                register(tagged, sink, name);
+                return tagged;
+            }
+        }, "tag");
+    }
 }
@@ -1,11 +1,14 @@
 package com.pureqml.android.runtime;
 
 import android.animation.TimeInterpolator;
+import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Picture;
 import android.graphics.Point;
 import android.graphics.PointF;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.os.Build;
 import android.os.SystemClock;
@@ -17,6 +20,7 @@ import android.view.animation.DecelerateInterpolator;
 import com.eclipsesource.v8.Releasable;
 import com.eclipsesource.v8.V8Array;
 import com.eclipsesource.v8.V8Object;
+import com.pureqml.android.GenerateDispatcher;
 import com.pureqml.android.IExecutionEnvironment;
 import com.pureqml.android.TypeConverter;
 
@@ -24,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 
+@GenerateDispatcher
 public class Element extends BaseObject {
     public static final String TAG = "rt.Element";
 
@@ -35,6 +40,11 @@ public class Element extends BaseObject {
     static final String EVENT_MOUSEUP = "mouseup";
     static final String EVENT_MOUSEDOWN = "mousedown";
     static final String EVENT_MOUSEMOVE = "mousemove";
+    static final long   ClickBit        = getEventBit(EVENT_CLICK);
+    static final long   MouseUpBit      = getEventBit(EVENT_MOUSEUP);
+    static final long   MouseDownBit    = getEventBit(EVENT_MOUSEDOWN);
+    static final long   MouseMoveBit    = getEventBit(EVENT_MOUSEMOVE);
+    static final long   MouseEvents     = ClickBit | MouseUpBit | MouseDownBit | MouseMoveBit;
 
     private final Rect          _rect               = new Rect();
     private final Rect          _combinedRect       = new Rect();
@@ -55,6 +65,54 @@ public class Element extends BaseObject {
     private boolean             _cacheValid = false;
     private Picture             _cachePicture = null;
 
+    //retained display list of element's own content, without children
+    private Picture             _contentPicture;
+    private boolean             _contentValid;
+    private final Rect          _contentRect        = new Rect();
+    private int                 _contentWidth;
+    private int                 _contentHeight;
+    private int                 _contentMargin;
+    private float               _contentOpacity;
+    private boolean             _contentRoundClip;
+    //display lists are dropped by LayerManager if element is not painted for a while
+    int                         _retainedIndex      = -1;
+    int                         _paintedFrame;
+
+    //subtree bounds relative to element origin, captured at last paint
+    final Rect                  _paintBounds        = new Rect();
+    boolean                     _paintBoundsValid;
+
+    //automatic layer, see LayerManager
+    LayerManager.Layer          _layer;
+    int                         _layerStableFrames;
+    boolean                     _layerRejected;
+
+    //descendants painted into layer or display list, offset of its origin in parent's paint space
+    private boolean             _ownSpace;
+    private int                 _spaceX;
+    private int                 _spaceY;
+    //children painted into offscreen tiles, offset of content origin in paint space at last paint
+    ScrollTiles                 _scrollTiles;
+    private int                 _tilesX;
+    private int                 _tilesY;
+    private int                 _lastScrollX;
+    private int                 _lastScrollY;
+    boolean                     _nativeViews; //subtree positions native views while painting, could not be cached
+
+    private final Rect          _redrawRect         = new Rect();
+    private final Rect          _redrawScratch      = new Rect();
+
+    //bumped on change of own geometry, transform, scroll or overflow and whenever cached values below change (js thread only)
+    //children compare it against generation of the parent they were computed for, so only changed subtree is recomputed
+    private int                 _geometryGeneration = 1;
+    private int                 _parentGeneration;  //0 if parent changed
+    //screen offset of parent's content and clip of all clipping ancestors, valid for _parentGeneration
+    private int                 _originX;
+    private int                 _originY;
+    private boolean             _clipped;
+    private final Rect          _ancestorClip       = new Rect();
+    private final Rect          _hitRect            = new Rect();
+
     protected ArrayList<Element> _children;
 
     private static final float  DetectionDistance = 5;
@@ -62,6 +120,11 @@ public class Element extends BaseObject {
     private static final float  MinimumScrollVelocity = 500;
     private static final float  DecelerateInterpolatorOrder = 3;
     private static final float  ScrollDuration = 3.0f;
+    static final int            ContentMargin = 16;
+    static final PorterDuffXfermode SrcOverMode = new PorterDuffXfermode(PorterDuff.Mode.SRC_OVER);
+    static final PorterDuffXfermode SrcInMode   = new PorterDuffXfermode(PorterDuff.Mode.SRC_IN);
+    //fixme: pictures could not be replayed on hw-accelerated canvas pre-M
+    static final boolean        DisplayListsSupported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
 
     private boolean             _enableScrollX;
     private boolean             _enableScrollY;
@@ -88,7 +151,7 @@ public class Element extends BaseObject {
             return;
 
         Log.v(TAG, "animate, scroll velocity: " + _scrollVelocity);
-        long now = SystemClock.elapsedRealtime();
+        long now = Math.max(_env.getFrameTime(), _scrollTimeLast);
         float t = (now - _scrollTimeBase) / 1000.0f / ScrollDuration;
         float dt = (now - _scrollTimeLast) / 1000.0f;
         _scrollTimeLast = now;
@@ -102,11 +165,8 @@ public class Element extends BaseObject {
         _scrollPos.x += _scrollVelocity.x * vtdt;
         _scrollPos.y += _scrollVelocity.y * vtdt;
 
-        Rect rect = getRect();
-        Rect parentRect = _parent.getRect();
-
-        int clientWidth = rect.width(), clientHeight = rect.height();
-        int w = parentRect.width(), h = parentRect.height();
+        int clientWidth = width(), clientHeight = height();
+        int w = _parent.width(), h = _parent.height();
 
         boolean enableScrollX = scrollXEnabled() && clientWidth > w;
         boolean enableScrollY = scrollYEnabled() && clientHeight > h;
@@ -140,48 +200,97 @@ public class Element extends BaseObject {
         emitScroll();
     }
 
-    public Rect getRedrawRect(Rect clipRect) {
-        //this function tries to calculate rectangle if this element says it's invalidated
-        Rect elementRect = new Rect();
-        if (_globallyVisible) {
-            Rect rect = new Rect(getScreenRect());
-            if (rect.intersect(clipRect)) {
-                //Log.v(TAG, "screen rect " + rect);
-                elementRect.union(rect);
-            }
+    //own geometry changed, cached origin and clip of descendants are stale
+    final void invalidateGeometry() {
+        ++_geometryGeneration;
+    }
 
-            rect = new Rect(_combinedRect);
-            if (rect.intersect(clipRect)) {
-                //Log.v(TAG, "combined rect " + rect);
-                elementRect.union(rect);
-            }
+    //element moved to another parent, own cached values are stale as well
+    private void invalidateParentGeometry() {
+        _parentGeneration = 0;
+        ++_geometryGeneration;
+    }
 
+    //computes screen origin and ancestor clip, one comparison per ancestor if nothing above has changed
+    private void updateGeometryCache() {
+        Element parent = _parent;
+        if (parent == null) {
+            _originX = _originY = 0;
+            _clipped = false;
+        } else {
+            parent.updateGeometryCache();
+            if (_parentGeneration == parent._geometryGeneration)
+                return;
+            int parentX = parent._originX + parent.getBaseX(), parentY = parent._originY + parent.getBaseY();
+            _originX = parentX - parent.getScrollXImpl();
+            _originY = parentY - parent.getScrollYImpl();
+            _clipped = parent._clipped;
+            if (_clipped)
+                _ancestorClip.set(parent._ancestorClip);
+            if (parent._clip) {
+                int right = parentX + parent.width(), bottom = parentY + parent.height();
+                if (!_clipped) {
+                    _ancestorClip.set(parentX, parentY, right, bottom);
+                    _clipped = true;
+                } else if (!_ancestorClip.intersect(parentX, parentY, right, bottom))
+                    _ancestorClip.setEmpty();
+            }
+            _parentGeneration = parent._geometryGeneration;
+            ++_geometryGeneration; //children were computed from previous values
         }
-        Rect last = new Rect(_lastRect);
-        if (last.intersect(clipRect)) {
-            //Log.v(TAG, "last rect " + last);
-            elementRect.union(last);
+    }
+
+    //returned rect is reused by next call
+    public Rect getRedrawRect(Rect clipRect) {
+        //this function tries to calculate rectangle if this element says it's invalidated
+        Rect elementRect = _redrawRect;
+        Rect rect = _redrawScratch;
+        elementRect.setEmpty();
+        rect.setEmpty();
+        if (_globallyVisible) {
+            getScreenRect(rect);
+            elementRect.union(_combinedRect);
         }
+        elementRect.union(_lastRect);
+
+        //painted rects are relative to the closest layer or scroll tiles, convert them while walking up
+        Element child = this;
         Element parent = _parent;
         while(parent != null) {
             parent._cacheValid = false;
-            if (parent._clip && !elementRect.isEmpty()) {
-                Rect parentRect = parent.getScreenRect(); //fixme: this makes this loop O(N^2)
-                elementRect.intersect(parentRect);
+            parent._paintBoundsValid = false; //descendant could move outside of cached bounds
+            ScrollTiles tiles = parent._scrollTiles;
+            if (tiles != null) {
+                tiles.invalidate(elementRect, 0, 0, 0);
+                //new position, geometry cache is valid for the whole chain after getScreenRect
+                tiles.invalidate(rect, parent._innerBorder - child._originX, parent._innerBorder - child._originY, ContentMargin);
+                elementRect.offset(parent._tilesX, parent._tilesY);
             }
+            if (parent._ownSpace)
+                elementRect.offset(parent._spaceX, parent._spaceY);
+            child = parent;
             parent = parent._parent;
         }
+        elementRect.union(rect);
+        if (!elementRect.intersect(clipRect))
+            elementRect.setEmpty();
+        if (!elementRect.isEmpty()) {
+            updateGeometryCache();
+            if (_clipped && !elementRect.intersect(_ancestorClip))
+                elementRect.setEmpty(); //completely clipped by ancestors
+        }
         return elementRect;
     }
 
     public void enableCache(boolean enable)
     {
-        if (android.os.Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+        if (!DisplayListsSupported) {
             return; //fixme: could not be replayed on hw-accelerated canvas, use software on pre-M ?
         }
 
         if (_cache != enable) {
             _cache = enable;
+            _cacheValid = false;
             if (!enable)
                 _cachePicture = null;
         }
@@ -284,6 +393,7 @@ public class Element extends BaseObject {
         if (el._parent != null)
             throw new AlreadyHasAParentException();
         el._parent = this;
+        el.invalidateParentGeometry();
         if (_children == null)
             _children = new ArrayList<>();
         return el;
@@ -310,18 +420,48 @@ public class Element extends BaseObject {
         if (_parent != null)
             _parent.removeChild(this);
         _parent = null;
+        invalidateParentGeometry();
     }
 
     public void discard() {
         remove();
+        LayerManager layers = _env.getLayerManager();
+        if (_layer != null)
+            layers.remove(this);
+        if (_scrollTiles != null)
+            layers.removeScrollTiles(this);
+        layers.release(this);
+        releasePictures();
+        super.discard();
+    }
+
+    //display lists are recorded again on next paint
+    final void releasePictures() {
         _cacheValid = false;
         _cachePicture = null;
-        super.discard();
+        _contentValid = false;
+        _contentPicture = null;
+    }
+
+    final int getRetainedPictures() {
+        return (_cachePicture != null? 1: 0) + (_contentPicture != null? 1: 0);
     }
 
     void update() {
         _env.update(this);
         _cacheValid = false;
+        _paintBoundsValid = false;
+    }
+
+    //element's own content changed, display list must be re-recorded
+    void invalidateContent() {
+        _contentValid = false;
+        update();
+    }
+
+    //called from paintContent if recorded content is not final yet (e.g. image is still loading)
+    final void contentIncomplete() {
+        _contentValid = false;
     }
 
     public void updateStyle() {}
@@ -332,7 +472,16 @@ public class Element extends BaseObject {
     protected void removeChild(Element child) {
         if (_children != null)
             _children.remove(child);
-        _lastRect.union(child._lastRect);
+        Rect rect = _redrawScratch;
+        rect.set(child._lastRect);
+        rect.union(child._combinedRect);
+        if (_scrollTiles != null) {
+            _scrollTiles.invalidate(rect, 0, 0, 0);
+            rect.offset(_tilesX, _tilesY);
+        }
+        if (_ownSpace)
+            rect.offset(_spaceX, _spaceY);
+        _lastRect.union(rect);
         update();
     }
 
@@ -342,6 +491,7 @@ public class Element extends BaseObject {
             return false;
         }
         String value = (String)objValue;
+        invalidateGeometry();
         switch(value) {
             case "auto":
             case "scroll":
@@ -402,14 +552,14 @@ public class Element extends BaseObject {
 
     protected void setStyle(String name, Object value) {
         switch(name) {
-            case "left":    { int left = TypeConverter.toInteger(value);    _rect.right += left - _rect.left; _rect.left = left; } break;
-            case "top":     { int top = TypeConverter.toInteger(value);     _rect.bottom += top - _rect.top; _rect.top = top; } break;
-            case "width":   { int width = TypeConverter.toInteger(value);   _rect.right = _rect.left + width; } break;
-            case "height":  { int height = TypeConverter.toInteger(value);  _rect.bottom = _rect.top + height; } break;
+            case "left":    { int left = TypeConverter.toInteger(value);    _rect.right += left - _rect.left; _rect.left = left; invalidateGeometry(); } break;
+            case "top":     { int top = TypeConverter.toInteger(value);     _rect.bottom += top - _rect.top; _rect.top = top; invalidateGeometry(); } break;
+            case "width":   { int width = TypeConverter.toInteger(value);   _rect.right = _rect.left + width; invalidateGeometry(); } break;
+            case "height":  { int height = TypeConverter.toInteger(value);  _rect.bottom = _rect.top + height; invalidateGeometry(); } break;
             case "opacity":     _opacity = TypeConverter.toFloat(value); break;
             case "z-index":     _z = TypeConverter.toInteger(value); if (this._parent != null) this._parent.sortChildren(); break;
             case "visibility":  _visible = value.equals("inherit") || value.equals("visible"); break;
-            case "transform": setTransform(value); break;
+            case "transform": setTransform(value); invalidateGeometry(); break;
             case "-pure-recursive-visibility": {
                 boolean globallyVisible = _globallyVisible;
                 boolean visible = TypeConverter.toBoolean(value);
@@ -444,7 +594,7 @@ public class Element extends BaseObject {
     }
 
     protected void onGloballyVisibleChanged(boolean value) { }
-    private void setStyleSafe(String name, Object value) {
+    void setStyleSafe(String name, Object value) {
         try {
             this.setStyle(name, value);
         } catch (Exception ex) {
@@ -471,6 +621,30 @@ public class Element extends BaseObject {
             ((Releasable)arg0).release();
     }
 
+    //same as left, top, width and height styles, with single invalidation
+    public void setGeometry(int left, int top, int width, int height) {
+        Rect rect = _rect;
+        if (rect.left == left && rect.top == top && rect.width() == width && rect.height() == height)
+            return;
+        rect.set(left, top, left + width, top + height);
+        invalidateGeometry();
+        update();
+    }
+
+    //same as style(name, value), property is passed as StyleRegistry id, see fd.styleIds
+    public void styleById(V8Array arguments) {
+        int id = arguments.getInteger(0);
+        String name = StyleRegistry.getName(id);
+        Object value = arguments.get(1);
+        if (name != null)
+            setStyleSafe(name, TypeConverter.getValue(_env, null, value));
+        else
+            Log.w(TAG, "invalid style id " + id);
+
+        if (value instanceof Releasable)
+            ((Releasable)value).release();
+    }
+
     private boolean roundClippingNeeded() {
         return _radius > 0 && android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
     }
@@ -494,123 +668,423 @@ public class Element extends BaseObject {
         return _rect.top + (_translate != null? _translate.y: 0);
     }
 
-    @SuppressWarnings("unchecked")
     public final void paintChildren(PaintState parent) {
+        boolean nativeViews = _nativeViews;
+        _nativeViews = hasNativeView();
         if (_children == null)
             return;
 
-        ArrayList<Element> children = (ArrayList<Element>)_children.clone();
-        int scrollX = -getScrollXImpl(), scrollY = -getScrollYImpl();
+        int scrollX = getScrollXImpl(), scrollY = getScrollYImpl();
+        boolean scrolled = scrollX != _lastScrollX || scrollY != _lastScrollY;
+        _lastScrollX = scrollX;
+        _lastScrollY = scrollY;
+
+        //scrolled content of clipping container is painted from offscreen tiles, created on first scroll
+        LayerManager layers = _env.getLayerManager();
+        boolean canTile = !nativeViews && _parent != null && _parent._clip && !parent.roundClipWorkaround && layers.isEnabled();
+        ScrollTiles tiles = _scrollTiles;
+        if (tiles == null && canTile && scrolled)
+            tiles = layers.createScrollTiles(this, parent.opacity, _innerBorder);
+
+        if (tiles != null) {
+            if (canTile && paintScrollTiles(parent, tiles, scrollX, scrollY, scrolled))
+                return;
+            layers.removeScrollTiles(this);
+        }
+        paintChildren(parent, -scrollX, -scrollY);
+    }
+
+    //returns false if tiles could not be used, nothing is painted then
+    private boolean paintScrollTiles(PaintState parent, ScrollTiles tiles, int scrollX, int scrollY, boolean scrolled) {
+        Canvas canvas = parent.canvas;
+        int originX = parent.baseX - scrollX, originY = parent.baseY - scrollY;
+        tiles.setup(parent.opacity, _innerBorder);
+
+        Rect visible = tiles.visible;
+        if (!canvas.getClipBounds(visible))
+            visible.setEmpty();
+        visible.offset(-originX, -originY);
+        //keep tiles around the whole container viewport, canvas is clipped to the dirty region only
+        Element container = _parent;
+        Rect viewport = tiles.viewport;
+        int viewportX = parent.baseX - getBaseX() + container.getScrollXImpl() - container._innerBorder - originX;
+        int viewportY = parent.baseY - getBaseY() + container.getScrollYImpl() - container._innerBorder - originY;
+        viewport.set(viewportX, viewportY, viewportX + container.width(), viewportY + container.height());
+        tiles.retain(viewport);
+
+        int left = 0, top = 0, right = -1, bottom = -1;
+        if (!visible.isEmpty()) {
+            left = ScrollTiles.tileIndex(visible.left);
+            top = ScrollTiles.tileIndex(visible.top);
+            right = ScrollTiles.tileIndex(visible.right - 1);
+            bottom = ScrollTiles.tileIndex(visible.bottom - 1);
+        }
 
-        for (Element child : children) {
+        int total = 0, invalid = 0;
+        for(int ty = top; ty <= bottom; ++ty) {
+            for (int tx = left; tx <= right; ++tx) {
+                ++total;
+                if (!tiles.obtain(tx, ty).valid)
+                    ++invalid;
+            }
+        }
+        if (tiles.updateChurn(scrolled, invalid, total))
+            return false;
+
+        //record exposed and invalidated tiles before drawing anything, so direct painting could still be used on failure
+        Rect savedLastRect = tiles.saved;
+        savedLastRect.set(_lastRect);
+        boolean ok = true;
+        for(int ty = top; ok && ty <= bottom; ++ty) {
+            for (int tx = left; ok && tx <= right; ++tx) {
+                ScrollTiles.Tile tile = tiles.obtain(tx, ty);
+                if (tile.valid)
+                    continue;
+                Canvas tileCanvas = tiles.beginRender(tile);
+                if (tileCanvas == null) {
+                    ok = false;
+                    break;
+                }
+                PaintState state = tiles.state.reset(tileCanvas);
+                state.opacity = parent.opacity;
+                try {
+                    paintChildren(state, 0, 0);
+                } finally {
+                    tiles.endRender(tile);
+                }
+            }
+        }
+        _lastRect.set(savedLastRect);
+        _combinedRect.setEmpty();
+        if (!ok)
+            return false;
+
+        for(int ty = top; ty <= bottom; ++ty) {
+            for (int tx = left; tx <= right; ++tx) {
+                ScrollTiles.Tile tile = tiles.obtain(tx, ty);
+                canvas.drawBitmap(tile.bitmap, originX + tile.x, originY + tile.y, null);
+            }
+        }
+        RenderStats stats = _env.getRenderStats();
+        stats.recorded += invalid;
+        stats.replayed += total - invalid;
+        _env.getLayerManager().onTilesPainted(invalid, total - invalid);
+        _tilesX = originX;
+        _tilesY = originY;
+
+        //children rects are in content space, report them in paint space as direct painting does
+        ArrayList<Element> children = _children;
+        for (int i = 0, n = children.size(); i < n; ++i) {
+            Element child = children.get(i);
+            if (!child._visible)
+                continue;
+            int childX = originX + child.getBaseX() + _innerBorder, childY = originY + child.getBaseY() + _innerBorder;
+            _combinedRect.union(childX, childY, childX + child._rect.width(), childY + child._rect.height());
+            Rect rect = child._combinedRect;
+            _combinedRect.union(rect.left + originX, rect.top + originY, rect.right + originX, rect.bottom + originY);
+            rect = child._lastRect;
+            _lastRect.union(rect.left + originX, rect.top + originY, rect.right + originX, rect.bottom + originY);
+            _nativeViews |= child._nativeViews;
+        }
+        return true;
+    }
+
+    private void paintChildren(PaintState parent, int scrollX, int scrollY) {
+        ArrayList<Element> children = _children;
+        RenderStats stats = _env.getRenderStats();
+
+        //children are transformed around their centers, cached bounds are not valid then
+        Rect clipBounds = parent.clipBounds;
+        boolean canCull = _scale == null && _rotate == 0;
+        if (canCull && !parent.canvas.getClipBounds(clipBounds))
+            clipBounds.setEmpty();
+        //layers are composited with src-over, round clip workaround needs children painted on parent's canvas
+        LayerManager layers = _env.getLayerManager();
+        boolean canLayer = canCull && !parent.roundClipWorkaround && layers.isEnabled();
+
+        //painting never modifies children list, no need to copy it
+        for (int i = 0, n = children.size(); i < n; ++i) {
+            Element child = children.get(i);
             float opacity = child._opacity * parent.opacity;
             if (!child._visible || !PaintState.visible(opacity))
                 continue;
 
-            Rect childRect = child.getRect();
+            ++stats.visited;
             int childX = scrollX + child.getBaseX() + _innerBorder, childY = scrollY + child.getBaseY() + _innerBorder;
-            int childWidth = childRect.width(), childHeight = childRect.height();
+            int childWidth = child._rect.width(), childHeight = child._rect.height();
+            int screenX = parent.baseX + childX, screenY = parent.baseY + childY;
             boolean cache = child._cache;
+            LayerManager.Layer layer = child._layer;
+            if (layer != null && (cache || !canLayer)) {
+                layers.demote(child);
+                layer = null;
+            }
+            if (layer != null && !layers.checkRasterCost(child, layer))
+                layer = null;
+
+            boolean culled = false;
+            if (canCull && child._paintBoundsValid) {
+                Rect bounds = child._paintBounds;
+                culled = !clipBounds.intersects(bounds.left + screenX, bounds.top + screenY, bounds.right + screenX, bounds.bottom + screenY);
+            }
+
+            if (culled) {
+                ++stats.culled;
+            } else if (layer != null) {
+                if (child._cacheValid && layer.bitmap != null && layer.opacity == opacity) {
+                    layers.onReused(child, layer);
+                    ++stats.replayed;
+                } else if (!paintLayer(layers, child, layer, childWidth, childHeight, opacity)) {
+                    layers.demote(child);
+                    layer = null;
+                } else {
+                    ++stats.recorded;
+                }
+                if (layer != null) {
+                    ++stats.drawn;
+                    Rect bounds = layer.bounds;
+                    parent.canvas.drawBitmap(layer.bitmap, screenX + bounds.left, screenY + bounds.top, null);
+                    child._ownSpace = true;
+                    child._spaceX = screenX + bounds.left;
+                    child._spaceY = screenY + bounds.top;
+                }
+            }
 
-            if (!child._cacheValid) {
-                PaintState state;
-                if (cache) {
+            if (culled || layer != null) {
+                //painted from layer or skipped
+            } else if (cache) {
+                layers.retain(child);
+                if (!child._cacheValid) {
                     if (child._cachePicture == null)
                         child._cachePicture = new Picture();
-                    state = new PaintState(child._cachePicture, childWidth, childHeight, opacity);
-                } else {
-                    state = new PaintState(parent, childX, childY, opacity);
+                    PaintState state = new PaintState(child._cachePicture, childWidth, childHeight, opacity);
+                    ++stats.recorded;
+                    paintChild(child, state, childWidth, childHeight, false); //fixme: disable clipping when caching (should be implicit)
+                    state.end();
+                    child._cacheValid = true;
+                }
+                ++stats.drawn;
+                child._ownSpace = true;
+                child._spaceX = screenX;
+                child._spaceY = screenY;
+                int saveCount = parent.canvas.save();
+                parent.canvas.translate(screenX, screenY);
+                parent.canvas.drawPicture(child._cachePicture);
+                parent.canvas.restoreToCount(saveCount);
+            } else if (canLayer) {
+                //stable subtrees are promoted to layers, kept if render thread finds them expensive to rasterize
+                boolean clean = child._cacheValid;
+                child._ownSpace = false;
+                if (paintChild(child, parent.child(childX, childY, opacity), childWidth, childHeight, child._clip))
+                    ++stats.drawn;
+                child._cacheValid = true;
+                if (layers.onPainted(child, clean)) {
+                    layers.promote(child);
+                    child._cacheValid = false; //render layer on next paint
                 }
+            } else {
+                child._ownSpace = false;
+                if (paintChild(child, parent.child(childX, childY, opacity), childWidth, childHeight, child._clip))
+                    ++stats.drawn;
+                child._cacheValid = true;
+            }
 
-                final boolean clip = child._clip && !cache; //fixme: disable clipping when caching (should be implicit)
-                boolean paint = true;
-                boolean saveCanvasState = clip || _scale != null || _rotate != 0;
-                int canvasRestorePoint;
+            {
+                int left = parent.baseX + child.getBaseX(), top = parent.baseY + child.getBaseY();
+                _combinedRect.union(left, top, left + childWidth, top + childHeight);
+            }
 
-                if (saveCanvasState)
-                    canvasRestorePoint = state.canvas.save();
-                else
-                    canvasRestorePoint = -1;
+            if (cache || layer != null) {
+                //cached subtree is painted in local coordinates, convert bounds to screen
+                child._lastRect.set(child._paintBounds);
+                child._lastRect.offset(screenX, screenY);
+                child._combinedRect.set(child._lastRect);
+            }
+            _combinedRect.union(child._combinedRect);
+            _lastRect.union(child._lastRect);
+            _nativeViews |= child._nativeViews;
+        }
+    }
 
-                try {
+    //paints child subtree at state.baseX, state.baseY applying this element's transform and optional child clip
+    //returns false if child is clipped out completely
+    private boolean paintChild(Element child, PaintState state, int childWidth, int childHeight, boolean clip) {
+        boolean paint = true;
+        boolean saveCanvasState = clip || _scale != null || _rotate != 0;
+        int canvasRestorePoint;
 
-                    if (_scale != null) {
-                        //Log.v(TAG, "adjusting scale to " + _scale);
-                        state.canvas.scale(_scale.x, _scale.y, state.baseX + childWidth / 2.0f, state.baseY + childHeight / 2.0f);
-                    }
+        if (saveCanvasState)
+            canvasRestorePoint = state.canvas.save();
+        else
+            canvasRestorePoint = -1;
 
-                    if (_rotate != 0) {
-                        state.canvas.rotate(_rotate, state.baseX + childWidth / 2.0f, state.baseY + childHeight / 2.0f);
-                    }
+        try {
 
-                    if (clip) {
-                        if (roundClippingNeeded()) {
-                            Path path = new Path();
-                            path.addRoundRect(state.baseX, state.baseY, state.baseX + childWidth, state.baseY + childHeight, _radius, _radius, Path.Direction.CW);
-                            if (!state.canvas.clipPath(path))
-                                paint = false;
-                        } else {
-                            if (!state.canvas.clipRect(new Rect(state.baseX, state.baseY, state.baseX + childWidth, state.baseY + childHeight)))
-                                paint = false;
-                        }
-                    }
+            if (_scale != null) {
+                //Log.v(TAG, "adjusting scale to " + _scale);
+                state.canvas.scale(_scale.x, _scale.y, state.baseX + childWidth / 2.0f, state.baseY + childHeight / 2.0f);
+            }
 
-                    if (paint) {
-                        child.paint(state);
-                    }
+            if (_rotate != 0) {
+                state.canvas.rotate(_rotate, state.baseX + childWidth / 2.0f, state.baseY + childHeight / 2.0f);
+            }
 
-                } catch (Exception ex) {
-                    Log.w(TAG, "paint", ex);
-                }
-                if (saveCanvasState) {
-                    state.canvas.restoreToCount(canvasRestorePoint);
-                }
-                if (cache) {
-                    state.end();
-                    child._cacheValid = true;
+            if (clip) {
+                if (roundClippingNeeded()) {
+                    Path path = state.path;
+                    path.rewind();
+                    path.addRoundRect(state.baseX, state.baseY, state.baseX + childWidth, state.baseY + childHeight, _radius, _radius, Path.Direction.CW);
+                    if (!state.canvas.clipPath(path))
+                        paint = false;
+                } else {
+                    if (!state.canvas.clipRect(state.baseX, state.baseY, state.baseX + childWidth, state.baseY + childHeight))
+                        paint = false;
                 }
             }
 
-            if (child._cacheValid) {
-                int saveCount = parent.canvas.save();
-                parent.canvas.translate(parent.baseX + childX, parent.baseY + childY);
-                parent.canvas.drawPicture(child._cachePicture);
-                parent.canvas.restoreToCount(saveCount);
+            if (paint) {
+                child.paint(state);
+                child.updatePaintBounds(state.baseX, state.baseY, childWidth, childHeight);
             }
 
-            childRect.offset(parent.baseX, parent.baseY);
-            _combinedRect.union(childRect);
+        } catch (Exception ex) {
+            Log.w(TAG, "paint", ex);
+        }
+        if (saveCanvasState) {
+            state.canvas.restoreToCount(canvasRestorePoint);
+        }
+        return paint;
+    }
 
-            _combinedRect.union(child._combinedRect);
-            Rect last = child._lastRect;
-            if (cache)
-                last.offset(childX, childY);
-            _lastRect.union(last);
+    //records child subtree for new layer bitmap, returns false if layer could not be used anymore
+    private boolean paintLayer(LayerManager layers, Element child, LayerManager.Layer layer, int childWidth, int childHeight, float opacity) {
+        if (layers.isChurning(layer))
+            return false;
+        Canvas canvas = layers.beginRender(child, layer, opacity);
+        if (canvas == null)
+            return false;
+
+        Rect bounds = layer.bounds;
+        PaintState state = layer.state.reset(canvas);
+        state.baseX = -bounds.left;
+        state.baseY = -bounds.top;
+        state.opacity = opacity;
+        try {
+            paintChild(child, state, childWidth, childHeight, child._clip);
+        } finally {
+            layers.endRender(layer);
+        }
+        child._cacheValid = true;
+        //subtree grew outside of the layer or started positioning native views
+        return child._paintBoundsValid && bounds.contains(child._paintBounds) && !child._nativeViews;
+    }
+
+    //remembers subtree bounds relative to element origin, used for culling on next frames
+    private void updatePaintBounds(int baseX, int baseY, int width, int height) {
+        Rect bounds = _paintBounds;
+        bounds.set(0, 0, width, height);
+        if (!_clip) {
+            if (!_lastRect.isEmpty())
+                bounds.union(_lastRect.left - baseX, _lastRect.top - baseY, _lastRect.right - baseX, _lastRect.bottom - baseY);
+            if (!_combinedRect.isEmpty())
+                bounds.union(_combinedRect.left - baseX, _combinedRect.top - baseY, _combinedRect.right - baseX, _combinedRect.bottom - baseY);
         }
+        _paintBoundsValid = true;
+    }
+
+    protected boolean hasContent() {
+        return false;
+    }
+
+    //element positions native view from paint(), its subtree could not be cached offscreen
+    protected boolean hasNativeView() {
+        return false;
+    }
+
+    protected int getContentMargin() {
+        return ContentMargin;
+    }
+
+    //paints element's own content at state.baseX, state.baseY, updates _lastRect
+    protected void paintContent(PaintState state) { }
+
+    protected final void paintRetainedContent(PaintState state) {
+        if (!hasContent()) {
+            _contentPicture = null;
+            return;
+        }
+        if (!DisplayListsSupported) {
+            paintContent(state);
+            return;
+        }
+
+        RenderStats stats = _env.getRenderStats();
+        int w = _rect.width(), h = _rect.height();
+        if (!_contentValid || _contentPicture == null ||
+            _contentWidth != w || _contentHeight != h ||
+            _contentOpacity != state.opacity || _contentRoundClip != state.roundClipWorkaround) {
+
+            if (_contentPicture == null)
+                _contentPicture = new Picture();
+            int margin = getContentMargin();
+            PaintState recording = new PaintState(_contentPicture, w, h, margin, state.opacity, state.roundClipWorkaround);
+            _contentValid = true;
+            _lastRect.setEmpty();
+            try {
+                paintContent(recording);
+            } finally {
+                recording.end();
+            }
+            _contentRect.set(_lastRect);
+            _contentRect.offset(-margin, -margin);
+            _contentWidth = w;
+            _contentHeight = h;
+            _contentMargin = margin;
+            _contentOpacity = state.opacity;
+            _contentRoundClip = state.roundClipWorkaround;
+            ++stats.recorded;
+        } else
+            ++stats.replayed;
+        _env.getLayerManager().retain(this);
+
+        _lastRect.set(_contentRect);
+        _lastRect.offset(state.baseX, state.baseY);
+
+        Canvas canvas = state.canvas;
+        int saveCount = canvas.save();
+        canvas.translate(state.baseX - _contentMargin, state.baseY - _contentMargin);
+        canvas.drawPicture(_contentPicture);
+        canvas.restoreToCount(saveCount);
     }
 
     public void paint(PaintState state) {
         beginPaint(state);
+        paintRetainedContent(state);
         paintChildren(state);
         endPaint();
     }
 
     public Rect getScreenRect() {
-        Rect rect = getRect();
-        Element el = _parent;
-        while(el != null) {
-            rect.offset(el.getBaseX() - el.getScrollXImpl(), el.getBaseY() - el.getScrollYImpl());
-            el = el._parent;
-        }
+        return getScreenRect(new Rect());
+    }
+
+    final Rect getScreenRect(Rect rect) {
+        updateGeometryCache();
+        rect.set(_rect);
+        rect.offset(_originX, _originY);
+        if (_translate != null)
+            rect.offset(_translate.x, _translate.y);
         return rect;
     }
 
     public boolean sendEvent(String keyName, KeyEvent event) {
-        Log.v(TAG, "sending " + keyName + " key...");
+        if (Log.isLoggable(TAG, Log.VERBOSE))
+            Log.v(TAG, "sending " + keyName + " key...");
         return emitUntilTrue(null, "keydown", keyName);
     }
 
     private void emitScroll() {
+        invalidateGeometry();
         _parent._scrollingElement = this;
         _parent.emit(null, "scroll");
         update();
@@ -621,7 +1095,10 @@ public class Element extends BaseObject {
             return false;
 
         boolean handled = false;
-        Rect rect = getRect();
+        Rect rect = _hitRect;
+        rect.set(_rect);
+        if (_translate != null)
+            rect.offset(_translate.x, _translate.y);
         int clientWidth = rect.width();
         int clientHeight = rect.height();
 
@@ -646,8 +1123,7 @@ public class Element extends BaseObject {
         if (_parent == null)
             return handled;
 
-        Rect parentRect = _parent.getRect();
-        int w = parentRect.width(), h = parentRect.height();
+        int w = _parent.width(), h = _parent.height();
         boolean enableScrollX = scrollXEnabled() && clientWidth > w;
         boolean enableScrollY = scrollYEnabled() && clientHeight > h;
 
@@ -656,10 +1132,7 @@ public class Element extends BaseObject {
                 if (rect.contains(x, y) && (
                          enableScrollX ||
                          enableScrollY ||
-                         hasCallbackFor(EVENT_CLICK) ||
-                         hasCallbackFor(EVENT_MOUSEDOWN) ||
-                         hasCallbackFor(EVENT_MOUSEUP) ||
-                         hasCallbackFor(EVENT_MOUSEMOVE)
+                         hasCallbackFor(MouseEvents)
                 )) {
                     if (_motionStartPos == null)
                         _motionStartPos = new Point(); //FIXME: optimise me? (unwrap to 2 int members)
@@ -672,7 +1145,7 @@ public class Element extends BaseObject {
                     _motionStartPos.x = (int) event.getX();
                     _motionStartPos.y = (int) event.getY();
                     _useScrollX = _useScrollY = false;
-                    if (hasCallbackFor(EVENT_MOUSEDOWN))
+                    if (hasCallbackFor(MouseDownBit))
                         emitMouseEvent(EVENT_MOUSEDOWN, x, y, x - rect.left, y - rect.top);
                     return true;
                 } else
@@ -749,7 +1222,7 @@ public class Element extends BaseObject {
                             emitScroll();
                         }
                         return handleMove;
-                    } else if (hasCallbackFor(EVENT_MOUSEMOVE)) {
+                    } else if (hasCallbackFor(MouseMoveBit)) {
                         emitMouseEvent(EVENT_MOUSEMOVE, x, y, x - rect.left, y - rect.top);
                         return true;
                     }
@@ -777,7 +1250,7 @@ public class Element extends BaseObject {
                             if (_scrollInterpolator == null)
                                 _scrollInterpolator = new DecelerateInterpolator(DecelerateInterpolatorOrder);
 
-                            _scrollTimeBase = _scrollTimeLast = SystemClock.elapsedRealtime();
+                            _scrollTimeBase = _scrollTimeLast = SystemClock.uptimeMillis();
                             _scrollVelocity = scrollVelocity;
                             _env.startAnimation(this, ScrollDuration);
                         } else
@@ -794,11 +1267,11 @@ public class Element extends BaseObject {
                     Log.v(TAG, "handled by parent");
                     return true;
                 } else if (!scrollUsed && rect.contains(x, y)) {
-                    if (hasCallbackFor(EVENT_MOUSEUP)) {
+                    if (hasCallbackFor(MouseUpBit)) {
                         emitMouseEvent(EVENT_MOUSEUP, x, y, x - rect.left, y - rect.top);
                         return true;
                     }
-                    if (hasCallbackFor(EVENT_CLICK)) {
+                    if (hasCallbackFor(ClickBit)) {
                         emitMouseEvent(EVENT_CLICK, x, y, x - rect.left, y - rect.top);
                         return true;
                     }
@@ -811,7 +1284,8 @@ public class Element extends BaseObject {
     }
 
     protected void emitMouseEvent(final String name, int x, int y, int relX, int relY) {
-        Log.d(TAG, "emitting " + name + ", position: " + relX + ", " + relY);
+        if (Log.isLoggable(TAG, Log.DEBUG))
+            Log.d(TAG, "emitting " + name + ", position: " + relX + ", " + relY);
         V8Object mouseEvent = new V8Object(_env.getRuntime());
         mouseEvent.add("clientX", x);
         mouseEvent.add("clientY", y);
@@ -841,20 +1315,27 @@ public class Element extends BaseObject {
     public void focus() {}
     public void blur() {}
 
+    //returns state's scratch rect
     public Rect getDstRect(PaintState state) {
-        Rect rect = new Rect(0, 0, _rect.width(), _rect.height());
-        rect.offset(state.baseX, state.baseY);
+        Rect rect = state.rect;
+        rect.set(state.baseX, state.baseY, state.baseX + _rect.width(), state.baseY + _rect.height());
         return rect;
     }
 
-    static Paint patchAlpha(Paint paint, int alpha, float opacity) {
+    final int width()   { return _rect.width(); }
+    final int height()  { return _rect.height(); }
+
+    //returns paint with alpha multiplied by opacity, target is used as storage if paint needs patching
+    static Paint patchAlpha(Paint paint, Paint target, int alpha, float opacity) {
         alpha = (int)(alpha * opacity);
         if (alpha <= 0)
             return null;
+        if (alpha == paint.getAlpha())
+            return paint;
 
-        Paint alphaPaint = new Paint(paint);
-        alphaPaint.setAlpha(alpha);
-        return alphaPaint;
+        target.set(paint);
+        target.setAlpha(alpha);
+        return target;
     }
 
     static private final class ZComparator implements Comparator<Element>
@@ -864,8 +1345,9 @@ public class Element extends BaseObject {
             return e1._z - e2._z;
         }
     }
+    static private final ZComparator ZOrder = new ZComparator();
 
     protected final void sortChildren() {
-        Collections.sort(_children, new ZComparator());
+        Collections.sort(_children, ZOrder);
     }
 }
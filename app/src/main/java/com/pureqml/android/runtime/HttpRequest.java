@@ -3,8 +3,10 @@ package com.pureqml.android.runtime;
 import android.net.http.HttpResponseCache;
 import android.util.Log;
 
+import com.eclipsesource.v8.Releasable;
 import com.eclipsesource.v8.V8;
 import com.eclipsesource.v8.V8Array;
+import com.eclipsesource.v8.V8ArrayBuffer;
 import com.eclipsesource.v8.V8Function;
 import com.eclipsesource.v8.V8Object;
 import com.eclipsesource.v8.V8Value;
@@ -17,11 +19,16 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 
 public final class HttpRequest {
     private static final String TAG = "HttpRequestDispatcher";
     private static boolean cacheInstalled;
+    static final int MaxResponseSize = 32 * 1024 * 1024; //default ceiling of arraybuffer response
+    private static final int InitialBufferSize = 64 * 1024;
+    private static final int ChunkSize = 16 * 1024;
 
     static class Request implements Runnable {
         private static final String TAG = "HttpRequest";
@@ -29,16 +36,23 @@ public final class HttpRequest {
         URL                     _url;
         HttpURLConnection       _connection;
         byte []                 _body;
+        boolean                 _binary;
+        int                     _maxResponseSize = MaxResponseSize;
         V8Function              _callback;
         V8Function              _error;
+        V8ArrayBuffer           _response; //allocated and released on js thread, filled by request thread
 
-        private void setProperty(String key, Object value) throws IOException {
+        //returns true if request keeps value handle
+        private boolean setProperty(String key, Object value) throws IOException {
             if (key.equals("url")) {
                 //ignore
             } else if (key.equals("headers")) {
                 V8Object headers = (V8Object) value;
                 for (String k : headers.getKeys()) {
-                    String v = headers.get(k).toString();
+                    Object header = headers.get(k);
+                    String v = header.toString();
+                    if (header instanceof Releasable)
+                        ((Releasable)header).release();
                     Log.v(TAG, "request header " + k + ": " + v);
                     _connection.setRequestProperty(k, v);
                 }
@@ -49,17 +63,44 @@ public final class HttpRequest {
                 _connection.setRequestProperty("Content-Type", value.toString());
             } else if (key.equals("data")) {
                 if (value instanceof V8Value && ((V8Value) value).isUndefined()) {
-                    return;
+                    return false;
                 }
                 _body = value.toString().getBytes("UTF-8");
                 if (_body.length > 0)
                     _connection.setDoOutput(true);
+            } else if (key.equals("responseType")) {
+                String type = value.toString();
+                _binary = type.equals("arraybuffer");
+                if (!_binary && !type.equals("text") && !type.isEmpty())
+                    Log.w(TAG, "unsupported response type " + type + ", using text");
+            } else if (key.equals("maxResponseSize")) {
+                if (value instanceof Number)
+                    _maxResponseSize = ((Number)value).intValue();
             } else if (key.equals("done")) {
                 _callback = (V8Function)value;
+                return true;
             } else if (key.equals("error")) {
                 _error = (V8Function)value;
+                return true;
             } else
                 Log.w(TAG, "unhandled request field " + key);
+            return false;
+        }
+
+        //js thread only
+        private void releaseHandles() {
+            if (_callback != null) {
+                _callback.close();
+                _callback = null;
+            }
+            if (_error != null) {
+                _error.close();
+                _error = null;
+            }
+            if (_response != null) {
+                _response.close();
+                _response = null;
+            }
         }
 
         @Override
@@ -68,7 +109,7 @@ public final class HttpRequest {
             String text;
             ExecutorService executor = _env.getExecutor();
             if (executor == null) {
-                Log.w(TAG, "executor == null, cancelling request");
+                Log.w(TAG, "executor == null, cancelling request"); //runtime is gone along with callback handles
                 return;
             }
 
@@ -89,6 +130,34 @@ public final class HttpRequest {
                 else
                     inputStream = _connection.getErrorStream();
 
+                if (_binary) {
+                    final int argCode = code;
+                    int contentLength = _connection.getContentLength();
+                    final ByteBuffer argData = contentLength >= 0?
+                        readBinary(executor, inputStream, contentLength):
+                        readBinary(inputStream);
+                    Log.d(TAG, "finished reading " + (argData != null? argData.remaining(): contentLength) + " bytes of response");
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (argData != null) {
+                                _response = new V8ArrayBuffer(_env.getRuntime(), argData.remaining());
+                                _response.getBackingStore().put(argData.duplicate());
+                            }
+                            if (_callback != null && !_callback.isReleased()) {
+                                V8Array args = createEventArguments(argCode, _response);
+                                try {
+                                    _env.invokeVoidCallback(_callback, null, args);
+                                } finally {
+                                    args.close();
+                                }
+                            }
+                            releaseHandles();
+                        }
+                    });
+                    return;
+                }
+
                 ByteArrayOutputStream dataOutputStream = new ByteArrayOutputStream();
                 byte[] buffer = new byte[4096];
                 int length;
@@ -109,13 +178,12 @@ public final class HttpRequest {
                         if (_callback != null && !_callback.isReleased()) {
                             V8Array args = createEventArguments(argCode, argText);
                             try {
-                                _callback.call(null, args);
-                            } catch(Exception ex) {
-                                Log.w(TAG, "callback failed", ex);
+                                _env.invokeVoidCallback(_callback, null, args);
                             } finally {
                                 args.close();
                             }
                         }
+                        releaseHandles();
                     }
                 });
             } catch (final Exception e) {
@@ -124,6 +192,7 @@ public final class HttpRequest {
                     @Override
                     public void run() {
                         emitError(e);
+                        releaseHandles();
                     }
                 });
             }
@@ -132,6 +201,82 @@ public final class HttpRequest {
             }
         }
 
+        //reads until buffer is full, returns false if stream ended first
+        //heap buffer is read into in place, v8 backing store is direct, InputStream reaches it through one chunk-sized array
+        private static boolean fill(InputStream input, ByteBuffer buffer) throws IOException {
+            byte[] chunk = buffer.hasArray()? null: new byte[Math.min(ChunkSize, buffer.remaining())];
+            while (buffer.hasRemaining()) {
+                if (chunk == null) {
+                    int r = input.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    if (r < 0)
+                        return false;
+                    buffer.position(buffer.position() + r);
+                } else {
+                    int r = input.read(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+                    if (r < 0)
+                        return false;
+                    buffer.put(chunk, 0, r);
+                }
+            }
+            return true;
+        }
+
+        //known length: js thread allocates response ArrayBuffer, body is read straight into its backing store
+        //v8 owns that memory, it lives as long as js holds the buffer, returns null as there's nothing left to copy
+        ByteBuffer readBinary(ExecutorService executor, InputStream inputStream, final int contentLength) throws Exception {
+            if (contentLength > _maxResponseSize)
+                throw new IOException("response of " + contentLength + " bytes exceeds limit of " + _maxResponseSize);
+
+            ByteBuffer store = executor.submit(new Callable<ByteBuffer>() {
+                @Override
+                public ByteBuffer call() {
+                    _response = new V8ArrayBuffer(_env.getRuntime(), contentLength);
+                    return _response.getBackingStore().duplicate();
+                }
+            }).get();
+            store.clear();
+            if (!fill(inputStream, store))
+                throw new IOException("response is shorter than announced " + contentLength + " bytes");
+            if (inputStream.read() != -1)
+                throw new IOException("response is longer than announced " + contentLength + " bytes");
+            return null;
+        }
+
+        //unknown length: heap buffer grows by doubling, copied once into v8-owned ArrayBuffer on js thread
+        ByteBuffer readBinary(InputStream inputStream) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.min(InitialBufferSize, _maxResponseSize));
+            while (fill(inputStream, buffer)) { //full, stream may have more
+                if (buffer.capacity() >= _maxResponseSize) {
+                    if (inputStream.read() == -1)
+                        break;
+                    throw new IOException("response exceeds limit of " + _maxResponseSize + " bytes");
+                }
+                ByteBuffer grown = ByteBuffer.allocate((int)Math.min((long)buffer.capacity() * 2, _maxResponseSize));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        V8Array createEventArguments(int code, V8ArrayBuffer response) {
+            V8 runtime = _env.getRuntime();
+            V8Array arguments = new V8Array(runtime);
+            V8Object result = new V8Object(runtime);
+            {
+                V8Object target = new V8Object(runtime);
+                target.add("status", code);
+                target.add("response", response);
+                target.add("responseType", "arraybuffer");
+                result.add("target", target);
+                target.close();
+            }
+            arguments.push(result);
+            result.close();
+            return arguments;
+        }
+
         V8Array createEventArguments(int code, String text) {
             V8 runtime = _env.getRuntime();
             V8Array arguments = new V8Array(runtime);
@@ -150,9 +295,14 @@ public final class HttpRequest {
 
 
         private void emitError(final Exception e) {
-            if (_error != null)
-                _error.call(null, createEventArguments(400, e.toString()));
-            else
+            if (_error != null) {
+                V8Array args = createEventArguments(400, e.toString());
+                try {
+                    _env.invokeVoidCallback(_error, null, args);
+                } finally {
+                    args.close();
+                }
+            } else
                 Log.w(TAG, "no error handler for request found", e);
         }
 
@@ -166,7 +316,8 @@ public final class HttpRequest {
 
                 for (String key : request.getKeys()) {
                     Object value = request.get(key);
-                    setProperty(key, value);
+                    if (!setProperty(key, value) && value instanceof Releasable)
+                        ((Releasable)value).release();
                 }
 
                 Log.v(TAG, "starting request thread...");
@@ -174,6 +325,7 @@ public final class HttpRequest {
             } catch (Exception e) {
                 Log.w(TAG, "connection failed", e);
                 emitError(e);
+                releaseHandles();
             } finally {
                 request.close();
             }
@@ -2,8 +2,6 @@ package com.pureqml.android.runtime;
 
 import android.graphics.Bitmap;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.util.Log;
 
@@ -12,6 +10,7 @@ import com.eclipsesource.v8.V8;
 import com.eclipsesource.v8.V8Array;
 import com.eclipsesource.v8.V8Function;
 import com.eclipsesource.v8.V8Object;
+import com.pureqml.android.GenerateDispatcher;
 import com.pureqml.android.IExecutionEnvironment;
 import com.pureqml.android.ImageLoadedCallback;
 import com.pureqml.android.ImageLoader;
@@ -21,11 +20,14 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.concurrent.Executor;
 
+@GenerateDispatcher
 public final class Image extends Element implements ImageLoadedCallback {
     private final static String TAG = "rt.Image";
     URL                         _url;
     V8Function                  _callback;
     final Paint                       _paint;
+    private final Paint               _alphaPaint = new Paint();
+    private final Rect                _srcRect = new Rect();
 
     private enum Position { LeftOrTop, Center, RightOrBottom }
 
@@ -159,15 +161,27 @@ public final class Image extends Element implements ImageLoadedCallback {
     public Image(IExecutionEnvironment env) {
         super(env);
         _paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
-        _paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_OVER));
+        _paint.setXfermode(SrcOverMode);
+    }
+
+    @Override
+    public void discard() {
+        releaseCallback();
+        super.discard();
+    }
+
+    private void releaseCallback() {
+        if (_callback != null) {
+            _callback.close();
+            _callback = null;
+        }
     }
 
     public void load(String name, V8Function callback) {
-        if (!name.contains("://"))
-            name = "file:///" + name;
+        releaseCallback(); //previous load is superseded
         _url = null;
         try {
-            _url = new URL(name);
+            _url = ImageLoader.parseUrl(name);
         } catch (MalformedURLException e) {
             Log.e(TAG, "invalid url", e);
             V8 v8 = _env.getRuntime();
@@ -178,6 +192,7 @@ public final class Image extends Element implements ImageLoadedCallback {
             if (r instanceof Releasable)
                 ((Releasable)r).release();
             args.close();
+            callback.close();
             return;
         }
         //Log.v(TAG, "loading " + url);
@@ -243,7 +258,7 @@ public final class Image extends Element implements ImageLoadedCallback {
                 super.setStyle(name, value);
                 return;
         }
-        update();
+        invalidateContent();
     }
 
     @Override
@@ -279,16 +294,20 @@ public final class Image extends Element implements ImageLoadedCallback {
                     }
                 } finally {
                     args.close();
-                    update();
+                    releaseCallback(); //loaded callback is one-shot
+                    invalidateContent();
                 }
             }
         });
     }
 
     @Override
-    public void paint(PaintState state) {
-        beginPaint(state);
+    protected boolean hasContent() {
+        return _url != null;
+    }
 
+    @Override
+    protected void paintContent(PaintState state) {
         if (_url != null) {
             Rect dst = getDstRect(state);
             Bitmap bitmap = null;
@@ -300,9 +319,9 @@ public final class Image extends Element implements ImageLoadedCallback {
             }
 
             if (bitmap != null) {
-                _paint.setXfermode(new PorterDuffXfermode(state.roundClipWorkaround? PorterDuff.Mode.SRC_IN: PorterDuff.Mode.SRC_OVER));
+                _paint.setXfermode(state.roundClipWorkaround? SrcInMode: SrcOverMode);
 
-                Paint paint = patchAlpha(_paint, 255, state.opacity);
+                Paint paint = patchAlpha(_paint, _alphaPaint, 255, state.opacity);
                 if (paint != null) {
                     boolean clip = _backgroundX.needClip(_backgroundY);
                     boolean doPaint = true;
@@ -313,7 +332,8 @@ public final class Image extends Element implements ImageLoadedCallback {
                     }
 
                     if (doPaint) {
-                        Rect src = new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
+                        Rect src = _srcRect;
+                        src.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
                         _backgroundX.merge(_backgroundY, dst, src);
                         state.canvas.drawBitmap(bitmap, src, dst, paint);
                         _lastRect.set(dst);
@@ -322,11 +342,10 @@ public final class Image extends Element implements ImageLoadedCallback {
                     if (clip)
                         state.canvas.restore();
                 }
-            } else
+            } else {
                 Log.d(TAG, "null bitmap returned for " + _url);
+                contentIncomplete();
+            }
         }
-        paintChildren(state);
-
-        endPaint();
     }
 }
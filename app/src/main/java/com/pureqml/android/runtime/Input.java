@@ -14,10 +14,12 @@ import android.view.View;
 import android.view.inputmethod.EditorInfo;
 import android.widget.TextView;
 
+import com.pureqml.android.GenerateDispatcher;
 import com.pureqml.android.IExecutionEnvironment;
 import com.pureqml.android.IRenderer;
 import com.pureqml.android.TypeConverter;
 
+@GenerateDispatcher
 public final class Input extends Element {
     public static final String TAG = "Input";
 
@@ -90,7 +92,7 @@ public final class Input extends Element {
 
     public void discard() {
         super.discard();
-        viewHolder.discard(_env.getRootView());
+        viewHolder.discard(_env);
     }
 
     private void updateType() {
@@ -171,7 +173,7 @@ public final class Input extends Element {
     }
 
     private void updateVisibility(boolean value) {
-        viewHolder.update(_env.getRootView(), value);
+        viewHolder.update(_env, value);
     }
 
     @Override
@@ -228,17 +230,22 @@ public final class Input extends Element {
         });
     }
 
+    @Override
+    protected boolean hasNativeView() {
+        return true;
+    }
+
     @Override
     public void paint(PaintState state) {
         beginPaint(state);
         paintChildren(state);
 
-        Rect rect = getRect();
+        Rect rect = getDstRect(state);
 
         if (!rect.isEmpty()) {
-            rect.offsetTo(state.baseX, state.baseY);
-            Log.i(TAG, "input layout " + rect.toString());
-            viewHolder.setRect(_env.getRootView(), rect);
+            if (Log.isLoggable(TAG, Log.VERBOSE))
+                Log.v(TAG, "input layout " + rect.toString());
+            viewHolder.setRect(_env, rect);
         }
 
         endPaint();
@@ -0,0 +1,373 @@
+package com.pureqml.android.runtime;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//promotes stable subtrees to bitmap layers, demotes churning ones and ones too cheap to rasterize
+//layers are kept in lru order within global byte budget shared with scroll tiles, js thread only
+//layer and tile content is recorded on js thread and rasterized into bitmaps by render thread
+//also tracks elements retaining display lists, which pin bitmaps they draw, and drops ones not painted for a while
+public final class LayerManager {
+    private static final String TAG = "LayerManager";
+
+    public static final int     DefaultBudget           = 32 * 1024 * 1024;
+    static final int            PromoteStableFrames     = 3;            //subtree painted unchanged this many times in a row
+    static final long           MinRasterCostNanos      = 500 * 1000;   //layer rasterized faster than that is not worth its bitmap
+    static final int            MaxLayerBudgetFraction  = 4;            //single layer could not take more than 1/4 of the budget
+    static final float          ChurnFactor             = 0.25f;        //ewma weight of the last draw
+    static final float          DemoteChurn             = 0.5f;         //layer re-rendered in more than half of recent draws
+    static final int            RetainFrames            = 600;          //display lists not painted for that many frames are dropped
+    static final int            SweepInterval           = 60;           //frames between checks of retained display lists
+
+    static final class Layer {
+        final Rect          bounds  = new Rect(); //relative to element's origin
+        final PaintState    state   = new PaintState((Canvas)null);
+        Bitmap              bitmap;
+        Raster              raster; //last rendering, until its cost is checked
+        float               opacity;
+        float               churn;
+        int                 bytes;
+    }
+
+    //content recorded on js thread, drawn into bitmap on render thread before the frame using the bitmap
+    public static final class Raster {
+        final Bitmap        bitmap;
+        final Picture       picture = new Picture();
+        long                nanos;  //written by render thread, read by js thread after the frame is presented
+        boolean             done;
+
+        Raster(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        //render thread
+        public void draw() {
+            long started = System.nanoTime();
+            new Canvas(bitmap).drawPicture(picture);
+            nanos = System.nanoTime() - started;
+            done = true;
+        }
+    }
+
+    private final LinkedHashMap<Element, Layer> _layers = new LinkedHashMap<>(16, 0.75f, true);
+    private final ArrayList<Element>            _scrollers = new ArrayList<>();
+    private final ArrayList<Raster>             _rasters = new ArrayList<>(); //recorded, not handed to render thread yet
+    private final ArrayList<Element>            _retained = new ArrayList<>(); //elements holding display lists
+    private int         _frame;
+    private int         _budget;
+    private long        _bytes;     //layers and tiles
+    private long        _tileBytes;
+
+    private long        _promoted;
+    private long        _demoted;
+    private long        _evicted;
+    private long        _rejected;
+    private long        _rendered;
+    private long        _reused;
+    private long        _tilesRendered;
+    private long        _tilesReused;
+    private long        _picturesDropped;
+
+    public LayerManager() {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        _budget = (int)Math.min(DefaultBudget, maxMemory / 8);
+        Log.i(TAG, "layer budget " + (_budget / 1024) + "k");
+    }
+
+    public boolean isEnabled() {
+        return _budget > 0;
+    }
+
+    public void setBudget(int budget) {
+        Log.i(TAG, "setting layer budget to " + (budget / 1024) + "k");
+        _budget = Math.max(budget, 0);
+        trimToSize(_budget);
+        if (_bytes > _budget)
+            clearScrollTiles();
+    }
+
+    public int getBudget()          { return _budget; }
+    public long getBytes()          { return _bytes; }
+    public int getLayers()          { return _layers.size(); }
+    public long getPromoted()       { return _promoted; }
+    public long getDemoted()        { return _demoted; }
+    public long getEvicted()        { return _evicted; }
+    public long getRejected()       { return _rejected; }
+    public long getRendered()       { return _rendered; }
+    public long getReused()         { return _reused; }
+    public long getTileBytes()      { return _tileBytes; }
+    public int getScrollers()       { return _scrollers.size(); }
+    public long getTilesRendered()  { return _tilesRendered; }
+    public long getTilesReused()    { return _tilesReused; }
+    public long getPicturesDropped(){ return _picturesDropped; }
+
+    public int getRetainedPictures() {
+        int n = 0;
+        for(int i = 0, size = _retained.size(); i < size; ++i)
+            n += _retained.get(i).getRetainedPictures();
+        return n;
+    }
+
+    private static int estimateBytes(Rect bounds) {
+        return bounds.width() * bounds.height() * 4;
+    }
+
+    //called after element subtree was painted directly, returns true if it should be promoted
+    //recording cost says nothing about rasterization, layer is kept only if render thread measured it as expensive
+    boolean onPainted(Element el, boolean clean) {
+        if (!clean || el._nativeViews) {
+            el._layerStableFrames = 0;
+            el._layerRejected = false;
+            return false;
+        }
+        if (++el._layerStableFrames < PromoteStableFrames || el._layerRejected || !el._paintBoundsValid)
+            return false;
+
+        Rect bounds = el._paintBounds;
+        return !bounds.isEmpty() && estimateBytes(bounds) <= _budget / MaxLayerBudgetFraction;
+    }
+
+    //creates empty layer, it's rendered next time element is painted
+    void promote(Element el) {
+        Layer layer = new Layer();
+        layer.bounds.set(el._paintBounds);
+        el._layer = layer;
+        el._layerStableFrames = 0;
+        _layers.put(el, layer);
+        ++_promoted;
+        if (Log.isLoggable(TAG, Log.DEBUG))
+            Log.d(TAG, "promoted " + el + ", bounds " + layer.bounds.toShortString());
+    }
+
+    void demote(Element el) {
+        Layer layer = el._layer;
+        if (layer == null)
+            return;
+        remove(el);
+        ++_demoted;
+        if (Log.isLoggable(TAG, Log.DEBUG))
+            Log.d(TAG, "demoted " + el + ", churn " + layer.churn);
+    }
+
+    void remove(Element el) {
+        Layer layer = _layers.remove(el);
+        if (layer != null)
+            _bytes -= layer.bytes;
+        el._layer = null;
+        el._layerStableFrames = 0;
+    }
+
+    //returns false and demotes layer if its last rasterization was cheaper than blitting is worth
+    boolean checkRasterCost(Element el, Layer layer) {
+        Raster raster = layer.raster;
+        if (raster == null || !raster.done)
+            return true;
+        layer.raster = null;
+        if (raster.nanos >= MinRasterCostNanos)
+            return true;
+        remove(el);
+        el._layerRejected = true; //until subtree changes
+        ++_rejected;
+        if (Log.isLoggable(TAG, Log.DEBUG))
+            Log.d(TAG, "rejected " + el + ", raster cost " + (raster.nanos / 1000) + "us");
+        return false;
+    }
+
+    //allocates new bitmap for the layer, the old one could still be referenced by the frame in flight
+    //returns recording canvas, content is rasterized into the bitmap by render thread after endRender()
+    Canvas beginRender(Element el, Layer layer, float opacity) {
+        if (layer.bitmap != null)
+            layer.churn += (1 - layer.churn) * ChurnFactor;
+        Rect bounds = layer.bounds;
+        _bytes -= layer.bytes;
+        layer.bitmap = null;
+        layer.bytes = 0;
+        _layers.get(el); //touch, so it's evicted last
+        trimToSize(_budget - estimateBytes(bounds));
+        if (el._layer != layer)
+            return null; //evicted itself
+
+        Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError ex) {
+            Log.w(TAG, "failed to allocate layer " + bounds.toShortString(), ex);
+            trimToSize(0);
+            return null;
+        }
+        layer.bitmap = bitmap;
+        layer.bytes = bitmap.getByteCount();
+        layer.opacity = opacity;
+        _bytes += layer.bytes;
+        ++_rendered;
+        Raster raster = new Raster(bitmap);
+        layer.raster = raster;
+        return raster.picture.beginRecording(bounds.width(), bounds.height());
+    }
+
+    void endRender(Layer layer) {
+        Raster raster = layer.raster;
+        raster.picture.endRecording();
+        _rasters.add(raster);
+    }
+
+    void queueRaster(Raster raster) {
+        _rasters.add(raster);
+    }
+
+    //moves rasters recorded since the last call to the frame about to be submitted
+    public void takeRasters(List<Raster> out) {
+        for(int i = 0, n = _rasters.size(); i < n; ++i) //no iterator, static frames must not allocate
+            out.add(_rasters.get(i));
+        _rasters.clear();
+    }
+
+    void onReused(Element el, Layer layer) {
+        layer.churn -= layer.churn * ChurnFactor;
+        _layers.get(el); //touch
+        ++_reused;
+    }
+
+    boolean isChurning(Layer layer) {
+        return layer.churn > DemoteChurn;
+    }
+
+    ScrollTiles createScrollTiles(Element el, float opacity, int innerBorder) {
+        ScrollTiles tiles = new ScrollTiles(this, opacity, innerBorder);
+        el._scrollTiles = tiles;
+        _scrollers.add(el);
+        if (Log.isLoggable(TAG, Log.DEBUG))
+            Log.d(TAG, "enabled scroll tiles for " + el);
+        return tiles;
+    }
+
+    void removeScrollTiles(Element el) {
+        ScrollTiles tiles = el._scrollTiles;
+        if (tiles == null)
+            return;
+        tiles.clear();
+        el._scrollTiles = null;
+        _scrollers.remove(el);
+        if (Log.isLoggable(TAG, Log.DEBUG))
+            Log.d(TAG, "disabled scroll tiles for " + el);
+    }
+
+    private void clearScrollTiles() {
+        for(int i = _scrollers.size() - 1; i >= 0; --i)
+            removeScrollTiles(_scrollers.get(i));
+    }
+
+    //evicts layers if needed, tiles never evict other scrollers' tiles
+    boolean reserveTileBytes(int bytes) {
+        trimToSize(_budget - bytes);
+        if (_bytes + bytes > _budget)
+            return false;
+        _bytes += bytes;
+        _tileBytes += bytes;
+        return true;
+    }
+
+    void releaseTileBytes(int bytes) {
+        _bytes -= bytes;
+        _tileBytes -= bytes;
+    }
+
+    void onTilesPainted(int rendered, int reused) {
+        _tilesRendered += rendered;
+        _tilesReused += reused;
+    }
+
+    //called whenever element paints or replays its display lists
+    void retain(Element el) {
+        el._paintedFrame = _frame;
+        if (el._retainedIndex < 0) {
+            el._retainedIndex = _retained.size();
+            _retained.add(el);
+        }
+    }
+
+    void release(Element el) {
+        int index = el._retainedIndex;
+        if (index < 0)
+            return;
+        Element last = _retained.remove(_retained.size() - 1);
+        if (last != el) {
+            _retained.set(index, last);
+            last._retainedIndex = index;
+        }
+        el._retainedIndex = -1;
+    }
+
+    //js thread, once per painted frame
+    public void onFrame() {
+        if (++_frame % SweepInterval != 0)
+            return;
+        int dropped = 0;
+        for(int i = _retained.size() - 1; i >= 0; --i) { //last element moves into released slot, it's already checked
+            Element el = _retained.get(i);
+            if (_frame - el._paintedFrame >= RetainFrames) {
+                release(el);
+                el.releasePictures();
+                ++dropped;
+            }
+        }
+        _picturesDropped += dropped;
+        if (dropped > 0 && Log.isLoggable(TAG, Log.DEBUG))
+            Log.d(TAG, "dropped display lists of " + dropped + " elements not painted for " + RetainFrames + " frames");
+    }
+
+    private void clearPictures() {
+        for(int i = 0, n = _retained.size(); i < n; ++i) {
+            Element el = _retained.get(i);
+            el._retainedIndex = -1;
+            el.releasePictures();
+        }
+        _picturesDropped += _retained.size();
+        _retained.clear();
+    }
+
+    void trimToSize(long size) {
+        Iterator<Map.Entry<Element, Layer>> it = _layers.entrySet().iterator();
+        while(_bytes > size && it.hasNext()) {
+            Map.Entry<Element, Layer> entry = it.next();
+            Element el = entry.getKey();
+            Layer layer = entry.getValue();
+            it.remove();
+            _bytes -= layer.bytes;
+            el._layer = null;
+            el._layerStableFrames = 0;
+            ++_evicted;
+        }
+    }
+
+    public void clear() {
+        Log.i(TAG, "dropping " + _layers.size() + " layers, " + _scrollers.size() + " scrollers, " + (_bytes / 1024) + "k, " +
+            "display lists of " + _retained.size() + " elements");
+        clearScrollTiles();
+        clearPictures();
+        for(Element el : _layers.keySet()) {
+            el._layer = null;
+            el._layerStableFrames = 0;
+        }
+        _evicted += _layers.size();
+        _layers.clear();
+        _rasters.clear();
+        _bytes = _tileBytes = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "layers: " + _layers.size() + ", bytes: " + _bytes + "/" + _budget +
+                ", promoted: " + _promoted + ", demoted: " + _demoted + ", evicted: " + _evicted + ", rejected: " + _rejected +
+                ", scrollers: " + _scrollers.size() + ", tile bytes: " + _tileBytes;
+    }
+}
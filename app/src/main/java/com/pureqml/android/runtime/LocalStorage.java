@@ -7,11 +7,13 @@ import com.eclipsesource.v8.Releasable;
 import com.eclipsesource.v8.V8Array;
 import com.eclipsesource.v8.V8Function;
 import com.eclipsesource.v8.V8Object;
+import com.pureqml.android.GenerateDispatcher;
 import com.pureqml.android.IExecutionEnvironment;
 
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 
+@GenerateDispatcher
 public final class LocalStorage extends BaseObject {
     public static final String TAG = "localstorage";
     final int MaxStorageSize = 128 * 128 * 1024;
@@ -0,0 +1,277 @@
+package com.pureqml.android.runtime;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//bounded ring of log messages, written from js and worker threads without locks, drained by background thread
+//to logcat and rotating file in cache dir. messages over the rate limit or over the ring capacity are dropped and counted
+public final class LogSink {
+    private static final String TAG = "LogSink";
+
+    static final int            Capacity        = 1024; //power of two
+    static final int            MaxRate         = 500;  //messages per second, errors are never limited
+    static final long           MaxFileSize     = 1024 * 1024;
+    static final long           DrainInterval   = TimeUnit.MILLISECONDS.toNanos(20);
+    public static final int     Off             = Log.ASSERT + 1;
+    static final String         FileName        = "js.log";
+
+    private static final class Entry {
+        volatile long   sequence;
+        int             level;
+        String          tag;
+        String          message;
+        long            time;
+    }
+
+    private final Entry[]                   _entries = new Entry[Capacity];
+    private final AtomicLong                _tail = new AtomicLong();
+    private long                            _head;  //drain thread only
+    private final AtomicInteger             _overflow = new AtomicInteger();
+    private final AtomicInteger             _limited = new AtomicInteger();
+    private final AtomicInteger             _windowCount = new AtomicInteger();
+    private volatile long                   _window;
+    private volatile Map<String, Integer>   _levels = new HashMap<>();
+    private volatile boolean                _fileEnabled = true;
+    private volatile boolean                _running;
+    private Thread                          _thread;
+    private File                            _dir;
+    private BufferedWriter                  _writer;
+    private long                            _fileSize;
+    private volatile int                    _dropped;   //reported total, written by drain thread only
+
+    public LogSink() {
+        for(int i = 0; i < Capacity; ++i) {
+            Entry e = new Entry();
+            e.sequence = i;
+            _entries[i] = e;
+        }
+    }
+
+    public static int parseLevel(Object value) {
+        switch(value.toString().toLowerCase()) {
+            case "verbose":     return Log.VERBOSE;
+            case "debug":       return Log.DEBUG;
+            case "info":
+            case "log":         return Log.INFO;
+            case "warn":
+            case "warning":     return Log.WARN;
+            case "error":       return Log.ERROR;
+            case "off":
+            case "none":        return Off;
+            default:
+                throw new IllegalArgumentException("invalid log level " + value);
+        }
+    }
+
+    public synchronized void setLevel(String tag, int level) {
+        Map<String, Integer> levels = new HashMap<>(_levels);
+        levels.put(tag, level);
+        _levels = levels;
+    }
+
+    //initial level comes from log.tag.<tag> system property, as for Log.isLoggable
+    private synchronized int resolveLevel(String tag) {
+        Integer level = _levels.get(tag);
+        if (level != null)
+            return level;
+        int l = Log.VERBOSE;
+        while (l < Off && !Log.isLoggable(tag, l))
+            ++l;
+        setLevel(tag, l);
+        return l;
+    }
+
+    public boolean isLoggable(String tag, int level) {
+        Integer l = _levels.get(tag);
+        return level >= (l != null? l: resolveLevel(tag));
+    }
+
+    public void setFileEnabled(boolean enabled) {
+        _fileEnabled = enabled;
+    }
+
+    private boolean allow(int level) {
+        if (level >= Log.ERROR)
+            return true;
+        long window = SystemClock.uptimeMillis() / 1000;
+        if (window != _window) {
+            _window = window;
+            _windowCount.set(0);
+        }
+        return _windowCount.incrementAndGet() <= MaxRate;
+    }
+
+    //any thread, never blocks
+    public void write(int level, String tag, String message) {
+        if (!allow(level)) {
+            _limited.incrementAndGet();
+            return;
+        }
+        Entry e;
+        long pos;
+        while (true) {
+            pos = _tail.get();
+            e = _entries[(int)pos & (Capacity - 1)];
+            long diff = e.sequence - pos;
+            if (diff == 0) {
+                if (_tail.compareAndSet(pos, pos + 1))
+                    break;
+            } else if (diff < 0) {
+                _overflow.incrementAndGet(); //drain thread is behind
+                return;
+            }
+        }
+        e.level = level;
+        e.tag = tag;
+        e.message = message;
+        e.time = System.currentTimeMillis();
+        e.sequence = pos + 1; //publish
+    }
+
+    public synchronized void start(File dir) {
+        if (_running)
+            return;
+        _dir = dir;
+        _running = true;
+        _thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                drainLoop();
+            }
+        }, "LogSink");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            if (!_running)
+                return;
+            _running = false;
+            thread = _thread;
+            _thread = null;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "interrupted while stopping log sink", e);
+        }
+    }
+
+    public int getDropped() {
+        return _dropped + _overflow.get() + _limited.get();
+    }
+
+    private void drainLoop() {
+        while (true) {
+            boolean running = _running;
+            int n = drain();
+            if (n == 0) {
+                flushFile();
+                if (!running)
+                    break;
+                LockSupport.parkNanos(this, DrainInterval);
+            }
+        }
+        closeFile();
+    }
+
+    private int drain() {
+        int n = 0;
+        while (true) {
+            Entry e = _entries[(int)_head & (Capacity - 1)];
+            if (e.sequence != _head + 1)
+                break;
+            int level = e.level;
+            String tag = e.tag, message = e.message;
+            long time = e.time;
+            e.tag = null;
+            e.message = null;
+            e.sequence = _head + Capacity; //slot is free for the next lap
+            ++_head;
+            ++n;
+            output(level, tag, message, time);
+        }
+        int overflow = _overflow.getAndSet(0), limited = _limited.getAndSet(0);
+        if (overflow + limited > 0) {
+            _dropped += overflow + limited;
+            output(Log.WARN, TAG, "dropped " + overflow + " messages on overflow, " + limited + " over rate limit", System.currentTimeMillis());
+        }
+        return n;
+    }
+
+    private void output(int level, String tag, String message, long time) {
+        Log.println(level, tag, message);
+        if (!_fileEnabled || _dir == null)
+            return;
+        try {
+            if (_writer == null)
+                openFile();
+            String line = time + " " + "VDIWEA".charAt(Math.max(0, Math.min(level, Log.ASSERT) - Log.VERBOSE)) + "/" + tag + ": " + message + "\n";
+            _writer.write(line);
+            _fileSize += line.length();
+            if (_fileSize > MaxFileSize)
+                rotate();
+        } catch (IOException e) {
+            Log.w(TAG, "log file write failed, disabling file output", e);
+            _fileEnabled = false;
+            closeFile();
+        }
+    }
+
+    private void openFile() throws IOException {
+        if (!_dir.isDirectory() && !_dir.mkdirs())
+            throw new IOException("can't create " + _dir);
+        File file = new File(_dir, FileName);
+        _fileSize = file.length();
+        _writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"), 16 * 1024);
+    }
+
+    private void rotate() throws IOException {
+        closeFile();
+        File file = new File(_dir, FileName);
+        File old = new File(_dir, FileName + ".1");
+        if (old.exists() && !old.delete())
+            Log.w(TAG, "can't delete " + old);
+        if (!file.renameTo(old))
+            Log.w(TAG, "can't rotate " + file);
+        openFile();
+    }
+
+    private void flushFile() {
+        if (_writer == null)
+            return;
+        try {
+            _writer.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "log file flush failed", e);
+        }
+    }
+
+    private void closeFile() {
+        if (_writer == null)
+            return;
+        try {
+            _writer.close();
+        } catch (IOException e) {
+            Log.w(TAG, "log file close failed", e);
+        }
+        _writer = null;
+    }
+}
@@ -1,42 +1,78 @@
 package com.pureqml.android.runtime;
 
 import android.graphics.Canvas;
+import android.graphics.Path;
 import android.graphics.Picture;
+import android.graphics.Rect;
+import android.graphics.RectF;
 
+//paint traversal state, one instance per tree depth is reused across frames
 public final class PaintState {
     public static final float opacityThreshold = 1.0f / 255;
 
-    public final Picture picture;
-    public final Canvas canvas;
-    public final int baseX;
-    public final int baseY;
-    public final float opacity;
+    public Picture picture;
+    public Canvas canvas;
+    public int baseX;
+    public int baseY;
+    public float opacity;
     public boolean roundClipWorkaround; //image round clipping works only with SRC_IN porter-duff function
 
+    //scratch objects, valid only within single paint call at this depth
+    final Rect      rect        = new Rect();
+    final Rect      clipBounds  = new Rect();
+    final RectF     rectF       = new RectF();
+    final Path      path        = new Path();
+
+    private PaintState _child;
+
     public PaintState(Canvas canvas) {
+        reset(canvas);
+    }
+
+    public PaintState(PaintState parent, int x, int y, float opacity) {
+        set(parent, x, y, opacity);
+    }
+
+    public PaintState(Picture picture, int w, int h, float opacity) {
+        this(picture, w, h, 0, opacity, false);
+    }
+
+    //records with margin on each side, so content could overflow element rect a bit
+    public PaintState(Picture picture, int w, int h, int margin, float opacity, boolean roundClipWorkaround) {
+        this.picture = picture;
+        this.canvas = picture.beginRecording(w + 2 * margin, h + 2 * margin);
+        this.baseX = margin;
+        this.baseY = margin;
+        this.opacity = opacity;
+        this.roundClipWorkaround = roundClipWorkaround;
+    }
+
+    public PaintState reset(Canvas canvas) {
         this.picture = null;
         this.canvas = canvas;
         this.baseX = this.baseY = 0;
         this.opacity = 1.0f;
         this.roundClipWorkaround = false;
+        return this;
     }
 
-    public PaintState(PaintState parent, int x, int y, float opacity) {
+    private PaintState set(PaintState parent, int x, int y, float opacity) {
         this.picture = null;
         this.canvas = parent.canvas;
         this.baseX = parent.baseX + x;
         this.baseY = parent.baseY + y;
         this.opacity = opacity;
         this.roundClipWorkaround = parent.roundClipWorkaround;
+        return this;
     }
 
-    public PaintState(Picture picture, int w, int h, float opacity) {
-        this.picture = picture;
-        this.canvas = picture.beginRecording(w, h);
-        this.baseX = 0;
-        this.baseY = 0;
-        this.opacity = opacity;
-        this.roundClipWorkaround = false;
+    //returns reused state for the next tree level
+    PaintState child(int x, int y, float opacity) {
+        if (_child == null)
+            _child = new PaintState(this, x, y, opacity);
+        else
+            _child.set(this, x, y, opacity);
+        return _child;
     }
 
     public void end() {
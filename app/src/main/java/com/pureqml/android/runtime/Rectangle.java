@@ -4,8 +4,6 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.LinearGradient;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
@@ -13,12 +11,14 @@ import android.util.Log;
 
 import com.eclipsesource.v8.V8Array;
 import com.eclipsesource.v8.V8Object;
+import com.pureqml.android.GenerateDispatcher;
 import com.pureqml.android.IExecutionEnvironment;
 import com.pureqml.android.TypeConverter;
 
 import static com.pureqml.android.TypeConverter.toColor;
 import static com.pureqml.android.TypeConverter.toInteger;
 
+@GenerateDispatcher
 public final class Rectangle extends Element {
     private final static String TAG = "rt.Rectangle";
     private final Paint   _background;
@@ -27,9 +27,12 @@ public final class Rectangle extends Element {
     String          _gradientOrientation = null;
     int[] _gradientColors = null;
     float[] _gradientPositions = null;
+    private LinearGradient  _gradient;
+    private final Rect      _gradientRect = new Rect();
+    private final Paint     _alphaPaint = new Paint();
 
     private void setupPaint(Paint paint) {
-        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_OVER));
+        paint.setXfermode(SrcOverMode);
     }
 
     public Rectangle(IExecutionEnvironment env) {
@@ -57,6 +60,7 @@ public final class Rectangle extends Element {
         _gradientOrientation = descriptor.getString("orientation");
         Log.v(TAG, "gradient orientation: " + _gradientOrientation);
         V8Array stops = descriptor.getArray("stops");
+        _gradient = null;
 
         _gradientColors = new int[stops.length()];
         _gradientPositions = new float[stops.length()];
@@ -68,8 +72,8 @@ public final class Rectangle extends Element {
         }
     }
 
-    Rect getGradientRect(Rect rect) {
-        Rect r = new Rect(rect);
+    Rect getGradientRect(Rect rect, Rect r) {
+        r.set(rect);
         switch(_gradientOrientation)
         {
             case "to bottom":
@@ -117,6 +121,7 @@ public final class Rectangle extends Element {
                 _gradientColors = null;
                 _gradientPositions = null;
                 _gradientOrientation = null;
+                _gradient = null;
                 break;
             case "border-radius":
                 try
@@ -129,34 +134,44 @@ public final class Rectangle extends Element {
                 super.setStyle(name, value);
                 return;
         }
-        update();
+        invalidateContent();
     }
 
     @Override
-    public void paint(PaintState state) {
-        beginPaint(state);
+    protected boolean hasContent() {
+        return _background.getColor() != 0 || _gradientOrientation != null || _border != null;
+    }
 
+    @Override
+    protected void paintContent(PaintState state) {
         Canvas canvas = state.canvas;
         float opacity = state.opacity;
         Rect rect = getDstRect(state);
 
         if (_background.getColor() != 0 || _gradientOrientation != null) {
             if (_gradientOrientation != null) {
-                Rect gradientRect = getGradientRect(rect);
-                LinearGradient lg = new LinearGradient(
-                        gradientRect.left, gradientRect.top,
-                        gradientRect.right, gradientRect.bottom,
-                        _gradientColors, _gradientPositions, Shader.TileMode.CLAMP
-                );
-                _background.setShader(lg);
+                //shader is recreated only if gradient geometry changed
+                Rect gradientRect = state.clipBounds;
+                getGradientRect(rect, gradientRect);
+                if (_gradient == null || !_gradientRect.equals(gradientRect)) {
+                    _gradientRect.set(gradientRect);
+                    _gradient = new LinearGradient(
+                            gradientRect.left, gradientRect.top,
+                            gradientRect.right, gradientRect.bottom,
+                            _gradientColors, _gradientPositions, Shader.TileMode.CLAMP
+                    );
+                }
+                _background.setShader(_gradient);
             }
             else
                 _background.setShader(null);
 
-            Paint paint = patchAlpha(_background, Color.alpha(_color), opacity);
+            Paint paint = patchAlpha(_background, _alphaPaint, Color.alpha(_color), opacity);
             if (paint != null) {
                 if (_radius > 0) {
-                    canvas.drawRoundRect(new RectF(rect), _radius, _radius, paint);
+                    RectF rectF = state.rectF;
+                    rectF.set(rect);
+                    canvas.drawRoundRect(rectF, _radius, _radius, paint);
                 } else {
                     canvas.drawRect(rect, paint);
                 }
@@ -164,8 +179,9 @@ public final class Rectangle extends Element {
         }
 
         if (_border != null) {
-            Paint paint = patchAlpha(_border, Color.alpha(_color), opacity);
-            RectF borderRect = new RectF(rect);
+            Paint paint = patchAlpha(_border, _alphaPaint, Color.alpha(_color), opacity);
+            RectF borderRect = state.rectF;
+            borderRect.set(rect);
             borderRect.inset(_innerBorder / 2.0f, _innerBorder / 2.0f);
             if (paint != null) {
                 if (_radius > 0) {
@@ -177,8 +193,5 @@ public final class Rectangle extends Element {
         }
 
         _lastRect.union(rect);
-        paintChildren(state);
-
-        endPaint();
     }
 }
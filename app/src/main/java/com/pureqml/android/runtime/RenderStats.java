@@ -0,0 +1,38 @@
+package com.pureqml.android.runtime;
+
+//per-frame and total paint counters, updated from the js thread only
+public final class RenderStats {
+    public int  recorded;   //display lists re-recorded this frame
+    public int  replayed;   //display lists replayed without repainting this frame
+    public int  visited;    //children considered by paintChildren
+    public int  culled;     //subtrees skipped, outside of current clip
+    public int  drawn;      //subtrees painted or replayed
+
+    public long totalRecorded;
+    public long totalReplayed;
+    public long totalVisited;
+    public long totalCulled;
+    public long totalDrawn;
+
+    public void beginFrame() {
+        recorded = 0;
+        replayed = 0;
+        visited = 0;
+        culled = 0;
+        drawn = 0;
+    }
+
+    public void endFrame() {
+        totalRecorded += recorded;
+        totalReplayed += replayed;
+        totalVisited += visited;
+        totalCulled += culled;
+        totalDrawn += drawn;
+    }
+
+    @Override
+    public String toString() {
+        return "recorded: " + recorded + ", replayed: " + replayed +
+                ", visited: " + visited + ", culled: " + culled + ", drawn: " + drawn;
+    }
+}
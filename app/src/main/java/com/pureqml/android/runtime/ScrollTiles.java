@@ -0,0 +1,160 @@
+package com.pureqml.android.runtime;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.util.SparseArray;
+
+//offscreen tiles of scrolled element's children, in content (unscrolled) coordinates
+//scroll frame only blits cached tiles and records newly exposed ones, js thread only
+//recorded tiles are rasterized by render thread before the frame blitting them
+final class ScrollTiles {
+    static final int            TileSize        = 256;
+    static final int            ChurnFrames     = 3;    //frames in a row re-rendering most of visible tiles without scrolling
+
+    static final class Tile {
+        final int       x, y; //content coordinates of top-left corner
+        Bitmap          bitmap;
+        boolean         valid;
+        LayerManager.Raster raster; //between beginRender and endRender
+
+        Tile(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private final LayerManager      _layers;
+    private final SparseArray<Tile> _tiles   = new SparseArray<>();
+    private float                   _opacity;
+    private int                     _innerBorder;
+    private int                     _churn;
+    private int                     _bytes;
+
+    final PaintState                state    = new PaintState((Canvas)null);
+    final Rect                      visible  = new Rect();
+    final Rect                      viewport = new Rect();
+    final Rect                      saved    = new Rect();
+
+    ScrollTiles(LayerManager layers, float opacity, int innerBorder) {
+        _layers = layers;
+        _opacity = opacity;
+        _innerBorder = innerBorder;
+    }
+
+    static int tileIndex(int value) {
+        return value >= 0? value / TileSize: (value - TileSize + 1) / TileSize;
+    }
+
+    private static int key(int tx, int ty) {
+        return (ty << 16) | (tx & 0xffff);
+    }
+
+    //parameters tiles were rendered with, all tiles are invalidated if they change
+    void setup(float opacity, int innerBorder) {
+        if (_opacity != opacity || _innerBorder != innerBorder) {
+            _opacity = opacity;
+            _innerBorder = innerBorder;
+            invalidate();
+        }
+    }
+
+    Tile obtain(int tx, int ty) {
+        int key = key(tx, ty);
+        Tile tile = _tiles.get(key);
+        if (tile == null) {
+            tile = new Tile(tx * TileSize, ty * TileSize);
+            _tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    //allocates new bitmap for tile, the old one could still be referenced by the frame in flight
+    //returns recording canvas in content coordinates clipped to the tile
+    Canvas beginRender(Tile tile) {
+        releaseBitmap(tile);
+        int bytes = TileSize * TileSize * 4;
+        if (!_layers.reserveTileBytes(bytes))
+            return null;
+        try {
+            tile.bitmap = Bitmap.createBitmap(TileSize, TileSize, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError ex) {
+            _layers.releaseTileBytes(bytes);
+            return null;
+        }
+        _bytes += bytes;
+        tile.valid = true;
+        tile.raster = new LayerManager.Raster(tile.bitmap);
+        Canvas canvas = tile.raster.picture.beginRecording(TileSize, TileSize);
+        canvas.translate(-tile.x, -tile.y);
+        canvas.clipRect(tile.x, tile.y, tile.x + TileSize, tile.y + TileSize);
+        return canvas;
+    }
+
+    void endRender(Tile tile) {
+        LayerManager.Raster raster = tile.raster;
+        tile.raster = null;
+        raster.picture.endRecording();
+        _layers.queueRaster(raster);
+    }
+
+    private void releaseBitmap(Tile tile) {
+        if (tile.bitmap == null)
+            return;
+        int bytes = TileSize * TileSize * 4;
+        tile.bitmap = null;
+        tile.valid = false;
+        _bytes -= bytes;
+        _layers.releaseTileBytes(bytes);
+    }
+
+    //drops tiles farther than one tile from container viewport, in content coordinates
+    void retain(Rect content) {
+        int left = content.left - TileSize, top = content.top - TileSize;
+        int right = content.right + TileSize, bottom = content.bottom + TileSize;
+        for(int i = _tiles.size() - 1; i >= 0; --i) {
+            Tile tile = _tiles.valueAt(i);
+            if (tile.x >= right || tile.y >= bottom || tile.x + TileSize <= left || tile.y + TileSize <= top) {
+                releaseBitmap(tile);
+                _tiles.removeAt(i);
+            }
+        }
+    }
+
+    //rect in content coordinates, offset by dx, dy and inflated by margin
+    void invalidate(Rect rect, int dx, int dy, int margin) {
+        if (rect.isEmpty())
+            return;
+        int left = rect.left + dx - margin, top = rect.top + dy - margin;
+        int right = rect.right + dx + margin, bottom = rect.bottom + dy + margin;
+        for(int i = 0, n = _tiles.size(); i < n; ++i) {
+            Tile tile = _tiles.valueAt(i);
+            if (tile.x < right && tile.y < bottom && tile.x + TileSize > left && tile.y + TileSize > top)
+                tile.valid = false;
+        }
+    }
+
+    void invalidate() {
+        for(int i = 0, n = _tiles.size(); i < n; ++i)
+            _tiles.valueAt(i).valid = false;
+    }
+
+    //returns true if tiles are re-rendered too often to be useful
+    boolean updateChurn(boolean scrolled, int rendered, int total) {
+        if (scrolled || rendered * 2 <= total)
+            _churn = 0;
+        else
+            ++_churn;
+        return _churn >= ChurnFrames;
+    }
+
+    void clear() {
+        for(int i = 0, n = _tiles.size(); i < n; ++i)
+            releaseBitmap(_tiles.valueAt(i));
+        _tiles.clear();
+    }
+
+    int getBytes() {
+        return _bytes;
+    }
+}
@@ -5,8 +5,10 @@ import android.graphics.Rect;
 import android.util.Log;
 import android.widget.ProgressBar;
 
+import com.pureqml.android.GenerateDispatcher;
 import com.pureqml.android.IExecutionEnvironment;
 
+@GenerateDispatcher
 public final class Spinner extends Element {
     public static final String TAG = "Input";
 
@@ -24,11 +26,11 @@ public final class Spinner extends Element {
 
     public void discard() {
         super.discard();
-        viewHolder.discard(_env.getRootView());
+        viewHolder.discard(_env);
     }
 
     private void updateVisibility(boolean value) {
-        viewHolder.update(_env.getRootView(), value);
+        viewHolder.update(_env, value);
     }
 
     @Override
@@ -38,17 +40,22 @@ public final class Spinner extends Element {
         updateVisibility(value);
     }
 
+    @Override
+    protected boolean hasNativeView() {
+        return true;
+    }
+
     @Override
     public void paint(PaintState state) {
         beginPaint(state);
         paintChildren(state);
 
-        Rect rect = getRect();
+        Rect rect = getDstRect(state);
 
         if (!rect.isEmpty()) {
-            rect.offsetTo(state.baseX, state.baseY);
-            Log.v(TAG, "spinner layout " + rect.toString());
-            viewHolder.setRect(_env.getRootView(), rect);
+            if (Log.isLoggable(TAG, Log.VERBOSE))
+                Log.v(TAG, "spinner layout " + rect.toString());
+            viewHolder.setRect(_env, rect);
         }
 
         endPaint();
@@ -0,0 +1,30 @@
+package com.pureqml.android.runtime;
+
+//integer ids of style properties known to setStyle implementations, exposed to js as fd.styleIds
+//names are the same interned literals setStyle switches on, so string switch hits cached hash and identity equals
+public final class StyleRegistry {
+    private static final String[] Names = {
+        //Element
+        "left", "top", "width", "height", "opacity", "z-index", "visibility", "transform",
+        "-pure-recursive-visibility", "overflow", "overflow-x", "overflow-y",
+        "cursor", "pointer-events", "touch-action", "will-change",
+        //Rectangle
+        "background", "background-color", "border-color", "border-width", "border-radius",
+        //Text, Input
+        "color", "font-size", "font-weight", "white-space", "word-break", "text-align",
+        "-pure-text-vertical-align", "text-shadow", "-pure-placeholder-color",
+        //Image
+        "image-rendering", "background-image", "background-position-x", "background-position-y",
+        "background-size", "background-repeat",
+    };
+
+    private StyleRegistry() {}
+
+    public static int size() {
+        return Names.length;
+    }
+
+    public static String getName(int id) {
+        return id >= 0 && id < Names.length? Names[id]: null;
+    }
+}
@@ -9,6 +9,7 @@ import android.util.Log;
 import com.eclipsesource.v8.V8Array;
 import com.eclipsesource.v8.V8Function;
 import com.eclipsesource.v8.V8Object;
+import com.pureqml.android.GenerateDispatcher;
 import com.pureqml.android.IExecutionEnvironment;
 import com.pureqml.android.IRenderer;
 import com.pureqml.android.TypeConverter;
@@ -16,6 +17,7 @@ import com.pureqml.android.TypeConverter;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+@GenerateDispatcher
 public final class Text extends Element {
 
     enum Wrap {
@@ -141,7 +143,7 @@ public final class Text extends Element {
                 super.setStyle(name, value);
                 return;
         }
-        update();
+        invalidateContent();
     }
 
     void update() {
@@ -150,13 +152,33 @@ public final class Text extends Element {
     }
 
     @Override
-    public void paint(PaintState state) {
-        beginPaint(state);
+    protected boolean hasContent() {
+        return _text != null;
+    }
+
+    @Override
+    protected int getContentMargin() {
+        //text is not clipped by element rect, record everything which could overflow it
+        int margin = ContentMargin;
+        if (_layout == null && _wrap == Wrap.Wrap)
+            layoutText();
+        if (_layout != null) {
+            margin = Math.max(margin, Math.max(_layout.width - width(), _layout.height - height()));
+        } else if (_text != null) {
+            if (_cachedWidth < 0)
+                _cachedWidth = (int)_paint.measureText(_text);
+            margin = Math.max(margin, Math.max(_cachedWidth - width(), (int)_paint.getTextSize() - height()));
+        }
+        return margin + ContentMargin;
+    }
+
+    @Override
+    protected void paintContent(PaintState state) {
         if (_text != null) {
             if (_layout == null && _wrap == Wrap.Wrap) {
                 layoutText();
             }
-            Rect rect = getRect();
+            int width = width(), height = height();
             float textSize = _paint.getTextSize();
             float lineHeight = textSize; //fixme: support proper line height/baseline
             final int ascent = (int)Math.ceil(-_paint.ascent()); //it's negative, we want positive
@@ -170,18 +192,18 @@ public final class Text extends Element {
 
                 switch (_halign) {
                     case AlignHCenter:
-                        x += (rect.width() - _cachedWidth) / 2;
+                        x += (width - _cachedWidth) / 2;
                         break;
                     case AlignRight:
-                        x += rect.width() - _cachedWidth;
+                        x += width - _cachedWidth;
                         break;
                 }
                 switch (_valign) {
                     case AlignVCenter:
-                        y += (rect.height() - lineHeight) / 2;
+                        y += (height - lineHeight) / 2;
                         break;
                     case AlignBottom:
-                        y += rect.height() - lineHeight;
+                        y += height - lineHeight;
                         break;
                 }
                 _lastRect.left = (int)x;
@@ -193,30 +215,29 @@ public final class Text extends Element {
             } else {
                 switch (_halign) {
                     case AlignHCenter:
-                        x += (rect.width() - _layout.width) / 2;
+                        x += (width - _layout.width) / 2;
                         break;
                     case AlignRight:
-                        x += rect.width() - _layout.width;
+                        x += width - _layout.width;
                         break;
                 }
                 switch (_valign) {
                     case AlignVCenter:
-                        y += (rect.height() - _layout.height) / 2;
+                        y += (height - _layout.height) / 2;
                         break;
                     case AlignBottom:
-                        y += rect.height() - _layout.height;
+                        y += height - _layout.height;
                         break;
                 }
                 //Log.v(TAG, "paint: " + _layout + ", halign: " + _halign + ", valign: "  + _valign + ", rect: " + rect);
-                for (TextLayout.Stripe stripe : _layout.stripes) {
+                for (int i = 0, n = _layout.stripes.size(); i < n; ++i) {
+                    TextLayout.Stripe stripe = _layout.stripes.get(i);
                     state.canvas.drawText(_layout.text, stripe.start, stripe.end, x, y, _paint);
                     y += lineHeight;
                 }
             }
             _lastRect.bottom = (int) (y - lineHeight + _paint.descent());
         }
-        paintChildren(state);
-        endPaint();
     }
 
     public void setText(String text) {
@@ -227,7 +248,7 @@ public final class Text extends Element {
         _text = text;
         resetLayout();
         //enableCache(text != null && text.length() != 0);
-        update();
+        invalidateContent();
     }
 
     static private final Pattern newLinePattern = Pattern.compile("<br.*?>");
@@ -278,11 +299,11 @@ public final class Text extends Element {
 
         V8Array args = new V8Array(_env.getRuntime());
         args.push(metrics);
-        callback.call(null, args);
+        _env.invokeVoidCallback(callback, null, args);
         args.close();
 
         metrics.close();
         callback.close();
-        update();
+        invalidateContent();
     }
 }
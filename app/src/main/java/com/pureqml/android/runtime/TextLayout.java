@@ -2,7 +2,7 @@ package com.pureqml.android.runtime;
 
 import android.graphics.Paint;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public final class TextLayout {
@@ -31,7 +31,7 @@ public final class TextLayout {
 
     public TextLayout(String text) {
         this.text = text;
-        this.stripes = new LinkedList<>();
+        this.stripes = new ArrayList<>();
     }
 
     public void add(int start, int end, int width) {
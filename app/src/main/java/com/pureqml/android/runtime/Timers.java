@@ -24,10 +24,12 @@ public final class Timers {
         V8Object            _callback;
         final int           _timeout;
         final boolean       _singleShot;
+        volatile boolean    _cancelled;
 
+        //takes ownership of callback handle
         Task(int id, V8Object callback, int timeout, boolean singleShot) {
             _id = id;
-            _callback = callback.twin();
+            _callback = callback;
             _timeout = timeout;
             _singleShot = singleShot;
         }
@@ -41,22 +43,6 @@ public final class Timers {
             }
         }
 
-        @Override
-        protected void finalize() throws Throwable {
-            //Log.v(TAG, "Timer task " + _id + " finalized");
-            ExecutorService executor = _env.getExecutor();
-            if (executor != null && _callback != null) {
-                executor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        releaseCallback();
-                    }
-                });
-            } else if (_callback != null)
-                Log.w(TAG, "no executor, callback won't be recycled");
-            super.finalize();
-        }
-
         @Override
         public void doRun() {
             ExecutorService executor = _env.getExecutor();
@@ -70,7 +56,7 @@ public final class Timers {
                     try {
                         V8Function func = (V8Function) _callback;
                         if (func != null)
-                            _env.invokeCallback(func, null, null);
+                            _env.invokeVoidCallback(func, null, null);
 
                     } finally {
                         if (_singleShot)
@@ -80,7 +66,7 @@ public final class Timers {
             });
 
             Handler handler = _handler;
-            if (!_singleShot) {
+            if (!_singleShot && !_cancelled) {
                 if (handler != null) {
                     handler.postDelayed(this, _timeout);
                 } else
@@ -90,6 +76,10 @@ public final class Timers {
 
         public void cancel() {
             //Log.v(TAG, "Timer task " + _id + " has been cancelled: ");
+            _cancelled = true;
+            Handler handler = _handler;
+            if (handler != null)
+                handler.removeCallbacks(this);
             _tasks.remove(_id);
             releaseCallback();
         }
@@ -150,7 +140,6 @@ public final class Timers {
             @Override
             public void invoke(V8Object v8Object, V8Array arguments) {
                 int id = arguments.getInteger(0);
-                //callback will leak here, fixme
                 Task task = _tasks.get(id);
                 if (task != null) {
                     task.cancel();
@@ -165,7 +154,7 @@ public final class Timers {
     }
 
     public void discard() {
-        for(int i = 0, n = _tasks.size(); i < n; ++i) {
+        for(int i = _tasks.size() - 1; i >= 0; --i) { //cancel() removes task
             Task task = _tasks.valueAt(i);
             if (task != null)
                 task.cancel();
@@ -34,6 +34,7 @@ import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
 import com.google.android.exoplayer2.util.Util;
+import com.pureqml.android.GenerateDispatcher;
 import com.pureqml.android.IExecutionEnvironment;
 import com.pureqml.android.IResource;
 import com.pureqml.android.SafeRunnable;
@@ -45,6 +46,7 @@ import java.util.TimerTask;
 import static com.google.android.exoplayer2.C.TIME_UNSET;
 
 
+@GenerateDispatcher
 public final class VideoPlayer extends BaseObject implements IResource {
     private static final String TAG = "VideoPlayer";
     private static final int PollingInterval = 500; //ms
@@ -506,7 +508,7 @@ public final class VideoPlayer extends BaseObject implements IResource {
 
     private void setRect(Rect rect) {
         Log.i(TAG, "Player.setRect " + rect);
-        viewHolder.setRect(_env.getRootView(), rect);
+        viewHolder.setRect(_env, rect);
         this.rect = rect;
         Rect surfaceGeometry = _env.getSurfaceGeometry();
         //if surface geometry defined and rectangle less than surface geometry, set Z on top
@@ -518,7 +520,7 @@ public final class VideoPlayer extends BaseObject implements IResource {
     public void setVisibility(boolean visible) {
         playerVisible = visible;
         Log.i(TAG, "Player.setVisibility " + visible);
-        viewHolder.update(_env.getRootView(), visible);
+        viewHolder.update(_env, visible);
     }
 
     @Override
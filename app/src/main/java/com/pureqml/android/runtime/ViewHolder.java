@@ -7,83 +7,52 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.RelativeLayout;
 
+import com.pureqml.android.IExecutionEnvironment;
+
 public final class ViewHolder<ViewType extends View> {
     private static final String TAG = "ViewHolder";
 
     private final ViewType                view;
     RelativeLayout.LayoutParams     layoutParams;
+    private final Rect              _rect = new Rect(); //geometry of installed layout params
 
     public ViewHolder(Context context, ViewType view) {
         this.view = view;
     }
 
-    public void discard(final ViewGroup rootView) {
-        if (rootView != null) {
-            rootView.post(new Runnable() {
-                @Override
-                public void run() {
-                    view.setVisibility(View.GONE);
-                    rootView.removeView(view);
-                }
-            });
-        } else
-            Log.w(TAG, "no root view...");
+    //removes view from root view or from views detached until the next activity binds
+    public void discard(IExecutionEnvironment env) {
+        env.removeView(view);
     }
 
-    void setRect(final ViewGroup rootView, Rect rect) {
-        if (rootView == null)
-            return;
-
-        RelativeLayout.LayoutParams lp = new RelativeLayout.LayoutParams(rect.width(), rect.height());
-        lp.leftMargin = rect.left;
-        lp.topMargin = rect.top;
-        Log.d(TAG, "layout params = " + lp.debug("RelativeLayout.LayoutParams"));
-
+    void setRect(IExecutionEnvironment env, Rect rect) {
+        RelativeLayout.LayoutParams lp;
         synchronized (this) {
-            if (!lp.equals(layoutParams)) {
-                Log.v(TAG, "installing new layout params");
+            //layout params have no equals(), compare geometry instead, this is called on every paint
+            if (layoutParams == null || !_rect.equals(rect)) {
+                lp = new RelativeLayout.LayoutParams(rect.width(), rect.height());
+                lp.leftMargin = rect.left;
+                lp.topMargin = rect.top;
+                Log.d(TAG, "installing new layout params = " + lp.debug("RelativeLayout.LayoutParams"));
                 layoutParams = lp;
+                _rect.set(rect);
             } else
                 lp = null;
         }
         if (lp != null)
-            update(rootView, true);
+            update(env, true);
     }
 
-    void update(final ViewGroup rootView, boolean visible) {
+    void update(IExecutionEnvironment env, boolean visible) {
         final ViewGroup.LayoutParams lp;
 
         synchronized (this) {
             lp = layoutParams;
         }
 
-        if (visible) {
-            rootView.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (view.getParent() == null) {
-                        Log.d(TAG, "adding view to layout...");
-                        view.setVisibility(View.VISIBLE);
-                        if (lp != null)
-                            rootView.addView(view, lp);
-                        else
-                            rootView.addView(view);
-                    } else {
-                        if (lp != null)
-                            rootView.updateViewLayout(view, lp);
-                    }
-                }});
-        } else {
-            rootView.post(new Runnable() {
-                @Override
-                public void run() {
-                    if (view.getParent() != null) {
-                        Log.d(TAG, "removing view from layout...");
-                        view.setVisibility(View.GONE);
-                        rootView.removeView(view);
-                    }
-                }
-            });
-        }
+        if (visible)
+            env.attachView(view, lp);
+        else
+            env.removeView(view);
     }
 }
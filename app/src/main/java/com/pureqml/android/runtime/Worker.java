@@ -0,0 +1,321 @@
+package com.pureqml.android.runtime;
+
+import android.util.Log;
+
+import com.eclipsesource.v8.JavaVoidCallback;
+import com.eclipsesource.v8.Releasable;
+import com.eclipsesource.v8.V8;
+import com.eclipsesource.v8.V8Array;
+import com.eclipsesource.v8.V8ArrayBuffer;
+import com.eclipsesource.v8.V8Function;
+import com.eclipsesource.v8.V8Object;
+import com.eclipsesource.v8.V8TypedArray;
+import com.pureqml.android.GenerateDispatcher;
+import com.pureqml.android.IExecutionEnvironment;
+import com.pureqml.android.SafeRunnable;
+import com.pureqml.android.ScriptLoader;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+
+//separate v8 isolate running script from assets on WorkerPool thread
+//messages are cloned through JSON, optional ArrayBuffer is copied out of sender isolate and into v8-owned buffer of receiver
+//worker script: onmessage = function(data, buffer) { postMessage(result, buffer) }, close() stops worker
+@GenerateDispatcher
+public final class Worker extends BaseObject {
+    private static final String TAG = "Worker";
+
+    static final class Message {
+        final String        json;
+        final ByteBuffer    buffer;
+
+        Message(String json, ByteBuffer buffer) {
+            this.json = json;
+            this.buffer = buffer;
+        }
+    }
+
+    private final String            _script;
+    private final WorkerPool        _pool;
+    private final WorkerPool.Queue  _queue;
+    private volatile V8             _runtime;       //worker isolate, used from worker queue only
+    private volatile boolean        _terminated;
+
+    public Worker(IExecutionEnvironment env, String script) {
+        super(env);
+        _script = script;
+        _pool = env.getWorkerPool();
+        if (!_pool.acquire()) {
+            env.removeObject(getObjectId());
+            throw new RuntimeException("too many workers, limit is " + WorkerPool.MaxWorkers);
+        }
+        _queue = _pool.createQueue();
+        _queue.execute(new SafeRunnable() {
+            @Override
+            protected void doRun() {
+                start();
+            }
+        });
+    }
+
+    //copies data and buffer out of isolate, any thread owning v8
+    static Message encode(V8 v8, V8Array arguments) {
+        int n = arguments.length();
+        String json = null;
+        ByteBuffer copy = null;
+        if (n > 0) {
+            Object data = arguments.get(0);
+            V8Object JSON = v8.getObject("JSON");
+            V8Array params = new V8Array(v8);
+            try {
+                params.push(data);
+                Object r = JSON.executeFunction("stringify", params);
+                if (r instanceof String)
+                    json = (String)r;
+                else if (r instanceof Releasable)
+                    ((Releasable)r).release(); //undefined
+            } finally {
+                params.close();
+                JSON.close();
+                if (data instanceof Releasable)
+                    ((Releasable)data).release();
+            }
+        }
+        if (n > 1) {
+            Object arg1 = arguments.get(1);
+            V8ArrayBuffer buffer = null;
+            try {
+                if (arg1 instanceof V8TypedArray)
+                    buffer = ((V8TypedArray)arg1).getBuffer();
+                else if (arg1 instanceof V8ArrayBuffer)
+                    buffer = ((V8ArrayBuffer)arg1).twin();
+                if (buffer != null) {
+                    ByteBuffer src = buffer.getBackingStore().duplicate();
+                    src.clear();
+                    copy = ByteBuffer.allocate(src.capacity());
+                    copy.put(src);
+                    copy.clear();
+                }
+            } finally {
+                if (buffer != null)
+                    buffer.release();
+                if (arg1 instanceof Releasable)
+                    ((Releasable)arg1).release();
+            }
+        }
+        return new Message(json, copy);
+    }
+
+    //creates handler arguments in target isolate: parsed data and optional ArrayBuffer
+    static V8Array decode(V8 v8, Message message) {
+        V8Array args = new V8Array(v8);
+        if (message.json != null) {
+            V8Object JSON = v8.getObject("JSON");
+            V8Array params = new V8Array(v8).push(message.json);
+            try {
+                Object data = JSON.executeFunction("parse", params);
+                args.push(data);
+                if (data instanceof Releasable)
+                    ((Releasable)data).release();
+            } finally {
+                params.close();
+                JSON.close();
+            }
+        } else
+            args.pushNull();
+
+        if (message.buffer != null) {
+            //java buffer can't back js ArrayBuffer, it may be collected while js still holds it
+            V8ArrayBuffer buffer = new V8ArrayBuffer(v8, message.buffer.capacity());
+            buffer.getBackingStore().put(message.buffer.duplicate());
+            args.push(buffer);
+            buffer.close();
+        }
+        return args;
+    }
+
+    //worker queue: runtime is bound to whichever pool thread runs the task
+    private void runLocked(Runnable task) {
+        V8 runtime = _runtime;
+        if (runtime == null || runtime.isReleased())
+            return;
+        runtime.getLocker().acquire();
+        try {
+            task.run();
+        } finally {
+            if (!runtime.isReleased())
+                runtime.getLocker().release();
+        }
+    }
+
+    private void start() {
+        if (_terminated) {
+            _pool.release();
+            return;
+        }
+        Log.i(TAG, "starting worker " + _script);
+        V8 runtime = null;
+        try {
+            runtime = V8.createV8Runtime("self");
+            _runtime = runtime;
+            V8Object console = new V8Object(runtime);
+            runtime.add("console", console);
+            Console.register(console, _env.getLogSink());
+            console.close();
+
+            runtime.registerJavaMethod(new JavaVoidCallback() {
+                @Override
+                public void invoke(V8Object self, V8Array arguments) {
+                    post(encode(_runtime, arguments));
+                }
+            }, "postMessage");
+            runtime.registerJavaMethod(new JavaVoidCallback() {
+                @Override
+                public void invoke(V8Object self, V8Array arguments) {
+                    terminateLater();
+                }
+            }, "close");
+
+            ScriptLoader.execute(runtime, _env.getAssets(), _script);
+        } catch (Exception e) {
+            Log.e(TAG, "worker script " + _script + " failed", e);
+            if (runtime == null) {
+                //no isolate for terminateLater() to close, so the slot is released here
+                _terminated = true;
+                _pool.release();
+                emitError(e.toString(), true);
+            } else
+                emitError(e.toString());
+        } finally {
+            if (runtime != null)
+                runtime.getLocker().release(); //next task could run on another pool thread
+        }
+    }
+
+    //worker to main thread
+    private void post(final Message message) {
+        ExecutorService executor = _env.getExecutor();
+        if (executor == null || _terminated)
+            return;
+        executor.execute(new SafeRunnable() {
+            @Override
+            protected void doRun() {
+                if (_terminated)
+                    return;
+                V8Array args = decode(_env.getRuntime(), message);
+                try {
+                    Object data = args.get(0);
+                    Object buffer = message.buffer != null? args.get(1): null;
+                    emit(null, "message", data, buffer);
+                    if (data instanceof Releasable)
+                        ((Releasable)data).release();
+                    if (buffer instanceof Releasable)
+                        ((Releasable)buffer).release();
+                } finally {
+                    args.close();
+                }
+            }
+        });
+    }
+
+    private void emitError(String error) {
+        emitError(error, false);
+    }
+
+    //force: reported even though worker is terminated already, failed start
+    private void emitError(final String error, final boolean force) {
+        ExecutorService executor = _env.getExecutor();
+        if (executor == null)
+            return;
+        executor.execute(new SafeRunnable() {
+            @Override
+            protected void doRun() {
+                if (force || !_terminated)
+                    emit(null, "error", error);
+            }
+        });
+    }
+
+    private void deliver(final Message message) {
+        runLocked(new Runnable() {
+            @Override
+            public void run() {
+                V8 runtime = _runtime;
+                Object handler = runtime.get("onmessage");
+                try {
+                    if (!(handler instanceof V8Function)) {
+                        Log.w(TAG, "worker " + _script + " has no onmessage handler, message dropped");
+                        return;
+                    }
+                    V8Array args = decode(runtime, message);
+                    try {
+                        Object r = ((V8Function)handler).call(null, args);
+                        if (r instanceof Releasable)
+                            ((Releasable)r).release();
+                    } catch (Exception e) {
+                        Log.e(TAG, "worker " + _script + " onmessage failed", e);
+                        emitError(e.toString());
+                    } finally {
+                        args.close();
+                    }
+                } finally {
+                    if (handler instanceof Releasable)
+                        ((Releasable)handler).release();
+                }
+            }
+        });
+    }
+
+    //main to worker: postMessage(data, [buffer])
+    public void postMessage(V8Array arguments) {
+        if (_terminated) {
+            Log.w(TAG, "postMessage to terminated worker " + _script);
+            return;
+        }
+        final Message message = encode(_env.getRuntime(), arguments);
+        _queue.execute(new SafeRunnable() {
+            @Override
+            protected void doRun() {
+                if (!_terminated)
+                    deliver(message);
+            }
+        });
+    }
+
+    private void terminateLater() {
+        _terminated = true;
+        _queue.execute(new SafeRunnable() {
+            @Override
+            protected void doRun() {
+                V8 runtime = _runtime;
+                _runtime = null;
+                if (runtime == null)
+                    return; //not started, closed already or failed to start, slot released by start()
+                try {
+                    runtime.getLocker().acquire();
+                    runtime.close();
+                } catch (Exception e) {
+                    Log.w(TAG, "worker " + _script + " shutdown", e);
+                } finally {
+                    _pool.release();
+                }
+                Log.i(TAG, "worker " + _script + " terminated");
+            }
+        });
+    }
+
+    public void terminate() {
+        if (_terminated)
+            return;
+        V8 runtime = _runtime;
+        if (runtime != null)
+            runtime.terminateExecution(); //interrupts long running script, isolate is closed afterwards
+        terminateLater();
+    }
+
+    @Override
+    public void discard() {
+        terminate();
+        super.discard();
+    }
+}
@@ -0,0 +1,121 @@
+package com.pureqml.android.runtime;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//bounded set of background threads shared by all fd.Worker isolates
+//every worker gets its own queue, tasks of one worker run in order, at most one at a time
+public final class WorkerPool {
+    private static final String TAG = "WorkerPool";
+
+    public static final int     MaxWorkers  = 8;
+    static final int            MaxThreads  = 4;
+
+    final class Queue implements Runnable {
+        private final ArrayDeque<Runnable>  _tasks = new ArrayDeque<>();
+        private boolean                     _scheduled;
+
+        void execute(Runnable task) {
+            synchronized (this) {
+                _tasks.add(task);
+                if (_scheduled)
+                    return;
+                _scheduled = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            try {
+                _executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "pool is shut down, dropping worker tasks");
+                synchronized (this) {
+                    _tasks.clear();
+                    _scheduled = false;
+                }
+            }
+        }
+
+        //runs one task per turn, so busy worker does not starve the others
+        @Override
+        public void run() {
+            Runnable task;
+            synchronized (this) {
+                task = _tasks.poll();
+            }
+            try {
+                if (task != null)
+                    task.run();
+            } finally {
+                boolean more;
+                synchronized (this) {
+                    more = !_tasks.isEmpty();
+                    _scheduled = more;
+                }
+                if (more)
+                    schedule();
+            }
+        }
+    }
+
+    private final ExecutorService   _executor;
+    private int                     _workers;
+
+    public WorkerPool() {
+        int threads = Math.max(1, Math.min(MaxThreads, Runtime.getRuntime().availableProcessors() - 1));
+        Log.i(TAG, "starting " + threads + " worker threads");
+        _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int _index;
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "Worker-" + (++_index));
+            }
+        });
+    }
+
+    //reserves worker slot, false if limit is reached
+    synchronized boolean acquire() {
+        if (_workers >= MaxWorkers)
+            return false;
+        ++_workers;
+        return true;
+    }
+
+    synchronized void release() {
+        --_workers;
+    }
+
+    public synchronized int getWorkers() {
+        return _workers;
+    }
+
+    Queue createQueue() {
+        return new Queue();
+    }
+
+    //waits for queued teardown of discarded workers
+    public void shutdown() {
+        _executor.shutdown();
+        try {
+            if (!_executor.awaitTermination(3, TimeUnit.SECONDS))
+                Log.w(TAG, "workers did not finish in time");
+        } catch (InterruptedException e) {
+            Log.w(TAG, "interrupted while waiting for workers", e);
+        }
+    }
+}
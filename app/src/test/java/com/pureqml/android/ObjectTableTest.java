@@ -0,0 +1,149 @@
+package com.pureqml.android;
+
+import com.pureqml.android.runtime.BaseObject;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ObjectTableTest {
+    //objects are only stored, environment just has to hand out ids
+    private static final IExecutionEnvironment Env = (IExecutionEnvironment)Proxy.newProxyInstance(
+        IExecutionEnvironment.class.getClassLoader(), new Class<?>[] { IExecutionEnvironment.class },
+        new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getReturnType() == int.class? 0: null;
+            }
+        });
+
+    private static int index(int handle) {
+        return handle & ObjectTable.IndexMask;
+    }
+
+    private static int generation(int handle) {
+        return handle >>> ObjectTable.IndexBits;
+    }
+
+    private static void assertPutFails(ObjectTable table, int handle) {
+        try {
+            table.put(handle, new BaseObject(Env));
+            fail("put accepted stale handle " + handle);
+        } catch (RuntimeException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void allocateAndRemove() {
+        ObjectTable table = new ObjectTable();
+        int handle = table.allocate();
+        assertTrue(handle > 0);
+        BaseObject object = new BaseObject(Env);
+        table.put(handle, object);
+        assertSame(object, table.get(handle));
+        assertEquals(1, table.size());
+        assertEquals(1, table.values().size());
+
+        table.remove(handle);
+        assertNull(table.get(handle));
+        assertEquals(0, table.size());
+        assertTrue(table.values().isEmpty());
+
+        table.remove(handle); //stale, ignored
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void freeListReusesSlots() {
+        ObjectTable table = new ObjectTable();
+        int first = table.allocate();
+        int second = table.allocate();
+        table.remove(first);
+
+        int reused = table.allocate();
+        assertEquals(index(first), index(reused));
+        assertNotEquals(first, reused);
+        assertNotEquals(index(second), index(reused));
+    }
+
+    @Test
+    public void staleHandlesResolveToNull() {
+        ObjectTable table = new ObjectTable();
+        int stale = table.allocate();
+        table.put(stale, new BaseObject(Env));
+        table.remove(stale);
+
+        int handle = table.allocate();
+        BaseObject object = new BaseObject(Env);
+        table.put(handle, object);
+        assertNull(table.get(stale));
+        assertSame(object, table.get(handle));
+        assertPutFails(table, stale);
+
+        table.remove(stale); //must not free the new owner of the slot
+        assertSame(object, table.get(handle));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void generationWrapSkipsZero() {
+        ObjectTable table = new ObjectTable();
+        int handle = table.allocate();
+        assertEquals(1, generation(handle));
+        for(int i = 0; i < ObjectTable.GenerationMask; ++i) {
+            table.remove(handle);
+            handle = table.allocate();
+            assertTrue("handle " + handle, handle > 0);
+            assertNotEquals(0, generation(handle));
+        }
+        assertEquals(1, generation(handle)); //wrapped past the last generation
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        ObjectTable table = new ObjectTable();
+        int n = ObjectTable.InitialCapacity + 1;
+        int[] handles = new int[n];
+        BaseObject[] objects = new BaseObject[n];
+        for(int i = 0; i < n; ++i) {
+            handles[i] = table.allocate();
+            objects[i] = new BaseObject(Env);
+            table.put(handles[i], objects[i]);
+        }
+        assertEquals(2 * ObjectTable.InitialCapacity, table.capacity());
+        assertEquals(n, table.size());
+        for(int i = 0; i < n; ++i)
+            assertSame(objects[i], table.get(handles[i]));
+    }
+
+    @Test
+    public void clearInvalidatesHandles() {
+        ObjectTable table = new ObjectTable();
+        int removed = table.allocate();
+        int live = table.allocate();
+        table.put(live, new BaseObject(Env));
+        table.remove(removed);
+        table.clear();
+        assertEquals(0, table.size());
+        assertNull(table.get(live));
+
+        int first = table.allocate();
+        int second = table.allocate();
+        assertNotEquals(live, first);
+        assertNotEquals(live, second);
+        assertNotEquals(removed, first);
+        assertNotEquals(removed, second);
+        assertPutFails(table, live);
+        assertPutFails(table, removed);
+    }
+}
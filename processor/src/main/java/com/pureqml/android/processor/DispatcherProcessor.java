@@ -0,0 +1,197 @@
+package com.pureqml.android.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+//generates <Class>Dispatcher for every class annotated with @GenerateDispatcher
+//exported methods are the same Wrapper exports via reflection: public methods declared in the class itself
+@SupportedAnnotationTypes(DispatcherProcessor.Annotation)
+public final class DispatcherProcessor extends AbstractProcessor {
+    static final String Annotation  = "com.pureqml.android.GenerateDispatcher";
+    static final String Suffix      = "Dispatcher";
+    static final String V8Array     = "com.eclipsesource.v8.V8Array";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(Annotation);
+        if (annotation == null)
+            return false;
+
+        for(Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@GenerateDispatcher could be applied to classes only");
+                continue;
+            }
+            try {
+                generate((TypeElement)element);
+            } catch (IOException ex) {
+                error(element, "failed to generate dispatcher: " + ex);
+            }
+        }
+        return true;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private Map<String, List<ExecutableElement>> getExportedMethods(TypeElement cls) {
+        //overloads are grouped by name, preserving declaration order
+        Map<String, List<ExecutableElement>> methods = new LinkedHashMap<>();
+        for(Element element : cls.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.METHOD || !element.getModifiers().contains(Modifier.PUBLIC))
+                continue;
+            ExecutableElement method = (ExecutableElement)element;
+            String name = method.getSimpleName().toString();
+            List<ExecutableElement> overloads = methods.get(name);
+            if (overloads == null) {
+                overloads = new ArrayList<>();
+                methods.put(name, overloads);
+            }
+            overloads.add(method);
+        }
+        return methods;
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private String getArgument(Element method, TypeMirror type, int index) {
+        String i = Integer.toString(index);
+        switch(type.getKind()) {
+            case INT:       return "Arguments.getInteger(arguments, " + i + ")";
+            case LONG:      return "Arguments.getLong(arguments, " + i + ")";
+            case FLOAT:     return "Arguments.getFloat(arguments, " + i + ")";
+            case DOUBLE:    return "Arguments.getDouble(arguments, " + i + ")";
+            case BOOLEAN:   return "Arguments.getBoolean(arguments, " + i + ")";
+            case DECLARED:
+            case ARRAY:
+            case TYPEVAR: {
+                String name = erasure(type);
+                if (name.equals("java.lang.String"))
+                    return "Arguments.getString(env, arguments, " + i + ")";
+                return "(" + name + ")Arguments.getObject(env, arguments, " + i + ", " + name + ".class)";
+            }
+            default:
+                error(method, "unsupported argument type " + type);
+                return "null";
+        }
+    }
+
+    private void writeCall(Writer w, String cls, ExecutableElement method, String indent) throws IOException {
+        List<? extends VariableElement> params = method.getParameters();
+        StringBuilder call = new StringBuilder();
+        if (method.getModifiers().contains(Modifier.STATIC))
+            call.append(cls);
+        else
+            call.append("((").append(cls).append(")self)");
+        call.append('.').append(method.getSimpleName()).append('(');
+
+        if (params.size() == 1 && erasure(params.get(0).asType()).equals(V8Array)) {
+            //raw arguments, same as Wrapper.SimpleMethodWrapper
+            call.append("arguments");
+        } else {
+            for(int i = 0; i < params.size(); ++i) {
+                if (i > 0)
+                    call.append(", ");
+                call.append(getArgument(method, params.get(i).asType(), i));
+            }
+        }
+        call.append(')');
+
+        if (method.getReturnType().getKind() == TypeKind.VOID) {
+            w.write(indent + call + ";\n");
+            w.write(indent + "return null;\n");
+        } else
+            w.write(indent + "return " + call + ";\n");
+    }
+
+    private void generate(TypeElement cls) throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(cls);
+        String packageName = pkg.getQualifiedName().toString();
+        String className = cls.getSimpleName().toString();
+        String clsName = cls.getQualifiedName().toString();
+        String dispatcherName = className + Suffix;
+
+        Map<String, List<ExecutableElement>> methods = getExportedMethods(cls);
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName + "." + dispatcherName, cls);
+        try (Writer w = file.openWriter()) {
+            w.write("package " + packageName + ";\n\n");
+            w.write("import com.eclipsesource.v8.V8Array;\n");
+            w.write("import com.pureqml.android.Arguments;\n");
+            w.write("import com.pureqml.android.IDispatcher;\n");
+            w.write("import com.pureqml.android.IExecutionEnvironment;\n\n");
+            w.write("//generated from " + clsName + ", do not edit\n");
+            w.write("public final class " + dispatcherName + " implements IDispatcher {\n");
+            w.write("    private static final String[] MethodNames = {\n");
+            for(String name : methods.keySet())
+                w.write("        \"" + name + "\",\n");
+            w.write("    };\n\n");
+
+            w.write("    @Override\n");
+            w.write("    public String[] getMethodNames() {\n");
+            w.write("        return MethodNames.clone();\n");
+            w.write("    }\n\n");
+
+            w.write("    @Override\n");
+            w.write("    public Object invoke(IExecutionEnvironment env, int method, com.pureqml.android.runtime.BaseObject self, V8Array arguments) {\n");
+            w.write("        switch(method) {\n");
+            int index = 0;
+            for(Map.Entry<String, List<ExecutableElement>> entry : methods.entrySet()) {
+                List<ExecutableElement> overloads = entry.getValue();
+                w.write("            case " + index++ + ": //" + entry.getKey() + "\n");
+                if (overloads.size() == 1) {
+                    writeCall(w, clsName, overloads.get(0), "                ");
+                    continue;
+                }
+                //overloads are resolved by argument count, the first declared wins otherwise
+                w.write("                switch(arguments.length()) {\n");
+                List<Integer> arities = new ArrayList<>();
+                for(ExecutableElement overload : overloads) {
+                    int arity = overload.getParameters().size();
+                    if (arities.contains(arity))
+                        continue;
+                    arities.add(arity);
+                    w.write("                    case " + arity + ":\n");
+                    writeCall(w, clsName, overload, "                        ");
+                }
+                w.write("                    default:\n");
+                writeCall(w, clsName, overloads.get(0), "                        ");
+                w.write("                }\n");
+            }
+            w.write("            default:\n");
+            w.write("                throw new IllegalArgumentException(\"invalid method index \" + method);\n");
+            w.write("        }\n");
+            w.write("    }\n");
+            w.write("}\n");
+        }
+    }
+}
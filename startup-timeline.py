@@ -0,0 +1,76 @@
+#!/usr/bin/env python3
+# cold-starts the app repeatedly over adb and reports median and p95 of every startup phase
+# phases come from the StartupTimeline log line, printed when the first frame is presented
+import argparse
+import math
+import re
+import subprocess
+import sys
+import time
+
+line_re = re.compile(r'StartupTimeline\s*:\s*timeline(.*)$')
+value_re = re.compile(r'(\w+)=(-?[\d.]+)')
+total_re = re.compile(r'TotalTime:\s*(\d+)')
+
+def adb(args, serial, **kw):
+	cmd = ['adb'] + (['-s', serial] if serial else []) + args
+	return subprocess.run(cmd, stdout = subprocess.PIPE, stderr = subprocess.STDOUT, universal_newlines = True, **kw).stdout
+
+def run_once(args):
+	adb(['shell', 'am', 'force-stop', args.package], args.serial)
+	adb(['logcat', '-c'], args.serial)
+	output = adb(['shell', 'am', 'start', '-W', '-n', '%s/%s' %(args.package, args.activity)], args.serial)
+	m = total_re.search(output)
+	deadline = time.time() + args.timeout
+	while time.time() < deadline:
+		log = adb(['logcat', '-d', '-s', 'StartupTimeline:I'], args.serial)
+		for line in log.splitlines():
+			t = line_re.search(line)
+			if t:
+				values = { name: float(value) for name, value in value_re.findall(t.group(1)) }
+				if m:
+					values['activityTotalTime'] = float(m.group(1))
+				return values
+		time.sleep(0.2)
+	return None
+
+def percentile(values, p):
+	values = sorted(values)
+	rank = max(0, int(math.ceil(p / 100.0 * len(values))) - 1) #nearest rank
+	return values[rank]
+
+def main():
+	parser = argparse.ArgumentParser(description = 'startup timeline statistics across repeated cold starts')
+	parser.add_argument('-n', '--runs', type = int, default = 10)
+	parser.add_argument('-s', '--serial', help = 'device serial')
+	parser.add_argument('--package', default = 'com.pureqml.qmlcore.runtime.android')
+	parser.add_argument('--activity', default = 'com.pureqml.android.MainActivity')
+	parser.add_argument('--timeout', type = float, default = 30, help = 'seconds to wait for the first frame')
+	parser.add_argument('--pause', type = float, default = 2, help = 'seconds between runs')
+	args = parser.parse_args()
+
+	samples = {}
+	order = []
+	for i in range(args.runs):
+		values = run_once(args)
+		if values is None:
+			print("run %d: no timeline within %gs" %(i + 1, args.timeout), file = sys.stderr)
+			continue
+		print("run %d: firstFrame %.1f ms" %(i + 1, values.get('firstFrame', float('nan'))), file = sys.stderr)
+		for name, value in values.items():
+			if name not in samples:
+				samples[name] = []
+				order.append(name)
+			samples[name].append(value)
+		time.sleep(args.pause)
+
+	if not samples:
+		sys.exit("no samples collected")
+
+	print("%-20s %6s %10s %10s %10s %10s" %('phase', 'runs', 'median', 'p95', 'min', 'max'))
+	for name in sorted(order, key = lambda n: percentile(samples[n], 50)):
+		v = samples[name]
+		print("%-20s %6d %10.1f %10.1f %10.1f %10.1f" %(name, len(v), percentile(v, 50), percentile(v, 95), min(v), max(v)))
+
+if __name__ == '__main__':
+	main()